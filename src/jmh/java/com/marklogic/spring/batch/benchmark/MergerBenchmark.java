@@ -0,0 +1,63 @@
+package com.marklogic.spring.batch.benchmark;
+
+import com.marklogic.spring.batch.columnmap.ColumnMapMerger;
+import com.marklogic.spring.batch.columnmap.DefaultColumnMapMerger;
+import com.marklogic.spring.batch.columnmap.StructuralColumnMapMerger;
+import com.marklogic.spring.batch.item.PathAwareColumnMapProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, in documents per second, of processing and merging the fanOut rows of a document. The rows are
+ * processed as part of the benchmark because merging modifies them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergerBenchmark {
+
+    @Param({"default", "structural"})
+    public String merger;
+
+    @Param({"10", "1000"})
+    public int fanOut;
+
+    @Param({"1", "2"})
+    public int nestingDepth;
+
+    private ColumnMapMerger columnMapMerger;
+    private PathAwareColumnMapProcessor processor;
+    private List<Map<String, Object>> rows;
+
+    @Setup
+    public void setup() {
+        rows = new SyntheticRows(10, 20, nestingDepth, fanOut).schemaRows(1);
+        processor = new PathAwareColumnMapProcessor();
+        columnMapMerger = "structural".equals(merger) ? new StructuralColumnMapMerger() : new DefaultColumnMapMerger();
+    }
+
+    @Benchmark
+    public Map<String, Object> processAndMerge() throws Exception {
+        Map<String, Object> document = processor.process(rows.get(0));
+        for (int i = 1; i < rows.size(); i++) {
+            columnMapMerger.mergeColumnMaps(document, processor.process(rows.get(i)));
+        }
+        return document;
+    }
+}
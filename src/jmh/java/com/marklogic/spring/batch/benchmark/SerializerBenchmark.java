@@ -0,0 +1,78 @@
+package com.marklogic.spring.batch.benchmark;
+
+import com.marklogic.spring.batch.columnmap.StreamingColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.DefaultColumnMapMerger;
+import com.marklogic.spring.batch.columnmap.DefaultStaxColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.JsonColumnMapSerializer;
+import com.marklogic.spring.batch.item.DocumentBuffer;
+import com.marklogic.spring.batch.item.PathAwareColumnMapProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, in documents per second, of serializing merged documents into a reused DocumentBuffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"xml", "json"})
+    public String format;
+
+    @Param({"10", "50"})
+    public int columnCount;
+
+    @Param({"10", "1000"})
+    public int valueSize;
+
+    @Param({"1", "10"})
+    public int fanOut;
+
+    private StreamingColumnMapSerializer serializer;
+    private List<Map<String, Object>> documents;
+    private DocumentBuffer buffer = new DocumentBuffer(8192);
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticRows rows = new SyntheticRows(columnCount, valueSize, 1, fanOut);
+        PathAwareColumnMapProcessor processor = new PathAwareColumnMapProcessor();
+        DefaultColumnMapMerger merger = new DefaultColumnMapMerger();
+        documents = new ArrayList<>();
+        List<Map<String, Object>> rowList = rows.schemaRows(100);
+        for (int i = 0; i < rowList.size(); i += fanOut) {
+            Map<String, Object> document = processor.process(rowList.get(i));
+            for (int j = 1; j < fanOut; j++) {
+                merger.mergeColumnMaps(document, processor.process(rowList.get(i + j)));
+            }
+            documents.add(document);
+        }
+        serializer = "json".equals(format) ? new JsonColumnMapSerializer() : new DefaultStaxColumnMapSerializer();
+    }
+
+    @Benchmark
+    public int serialize() {
+        next = next + 1 == documents.size() ? 0 : next + 1;
+        buffer.reset();
+        serializer.serializeColumnMap(documents.get(next), "row", null, buffer);
+        return buffer.size();
+    }
+}
@@ -0,0 +1,141 @@
+package com.marklogic.spring.batch.benchmark;
+
+import com.marklogic.spring.batch.jdbc.RowSchema;
+import com.marklogic.spring.batch.jdbc.SchemaRow;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates rows that look like the result of joining a parent table to a child table, without a database.
+ * <ul>
+ * <li>columnCount - the number of columns, including the "id" column</li>
+ * <li>valueSize - the number of characters in each string value</li>
+ * <li>nestingDepth - the number of path segments before the child columns, e.g. 2 produces "child1/child2/col5";
+ * 0 means no column is nested</li>
+ * <li>fanOut - the number of rows for each document, as with a one-to-many join; the parent columns have the same
+ * values in each of these rows, and the child columns differ</li>
+ * </ul>
+ * Half of the columns after "id" are parent columns and half are child columns.
+ */
+public class SyntheticRows {
+
+    private final String[] labels;
+    private final int valueSize;
+    private final int fanOut;
+    private final RowSchema schema;
+
+    public SyntheticRows(int columnCount, int valueSize, int nestingDepth, int fanOut) {
+        this.valueSize = valueSize;
+        this.fanOut = fanOut;
+        this.labels = new String[columnCount];
+        labels[0] = "id";
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 1; i <= nestingDepth; i++) {
+            prefix.append("child").append(i).append("/");
+        }
+        for (int i = 1; i < columnCount; i++) {
+            labels[i] = (isChildColumn(i) ? prefix.toString() : "") + "col" + i;
+        }
+        this.schema = buildSchema();
+    }
+
+    private boolean isChildColumn(int column) {
+        return column > labels.length / 2;
+    }
+
+    /**
+     * @return the rows for the given number of documents, as LinkedHashMaps, like Spring's ColumnMapRowMapper produces
+     */
+    public List<Map<String, Object>> mapRows(int documentCount) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int id = 0; id < documentCount; id++) {
+            for (int fan = 0; fan < fanOut; fan++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                Object[] values = values(id, fan);
+                for (int i = 0; i < labels.length; i++) {
+                    row.put(labels[i], values[i]);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return the same rows as mapRows, as SchemaRows, like CompiledColumnMapRowMapper produces
+     */
+    public List<Map<String, Object>> schemaRows(int documentCount) {
+        return schemaRows(0, documentCount);
+    }
+
+    /**
+     * @return the rows for the documents with IDs from firstId, as SchemaRows
+     */
+    public List<Map<String, Object>> schemaRows(int firstId, int documentCount) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int id = firstId; id < firstId + documentCount; id++) {
+            for (int fan = 0; fan < fanOut; fan++) {
+                rows.add(new SchemaRow(schema, values(id, fan)));
+            }
+        }
+        return rows;
+    }
+
+    private Object[] values(int id, int fan) {
+        Object[] values = new Object[labels.length];
+        values[0] = id;
+        for (int i = 1; i < labels.length; i++) {
+            String prefix = isChildColumn(i) ? id + "-" + fan + "-" : id + "-";
+            values[i] = pad(prefix + i);
+        }
+        return values;
+    }
+
+    private String pad(String value) {
+        if (value.length() >= valueSize) {
+            return value;
+        }
+        char[] chars = new char[valueSize - value.length()];
+        Arrays.fill(chars, 'x');
+        return value + new String(chars);
+    }
+
+    /**
+     * RowSchema is normally compiled from a ResultSet, so this fakes the only metadata it needs.
+     */
+    private RowSchema buildSchema() {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if ("getColumnCount".equals(name)) {
+                            return labels.length;
+                        } else if ("getColumnLabel".equals(name) || "getColumnName".equals(name)) {
+                            return labels[(Integer) args[0] - 1];
+                        } else if ("getColumnType".equals(name)) {
+                            return (Integer) args[0] == 1 ? Types.INTEGER : Types.VARCHAR;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+        try {
+            return new RowSchema(metaData);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public int getFanOut() {
+        return fanOut;
+    }
+}
@@ -0,0 +1,109 @@
+package com.marklogic.spring.batch.benchmark;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.spring.batch.item.ChunkColumnMapGrouper;
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import com.marklogic.spring.batch.item.DocumentBatchWriter;
+import com.marklogic.spring.batch.item.OrderedColumnMapGrouper;
+import com.marklogic.spring.batch.item.PathAwareColumnMapProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, in chunks per second, of ColumnMapItemWriter - grouping, merging, serializing and assembling
+ * DocumentWriteSets - with a DocumentBatchWriter that discards the sets, so MarkLogic isn't needed. Each chunk has
+ * 1000 rows with IDs that haven't been written before, and is built before each invocation because the grouper merges
+ * rows into the first row of each group. The writer is closed after each chunk so that every group is emitted, as it
+ * would be at the end of a step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+
+    @Param({"chunk", "ordered"})
+    public String grouping;
+
+    @Param({"1", "10"})
+    public int fanOut;
+
+    private DatabaseClient client;
+    private SyntheticRows syntheticRows;
+    private PathAwareColumnMapProcessor processor;
+    private ColumnMapItemWriter writer;
+    private List<Map<String, Object>> chunk;
+    private int nextId;
+    private long documentCount;
+
+    @Setup
+    public void setup() {
+        syntheticRows = new SyntheticRows(20, 20, 1, fanOut);
+        processor = new PathAwareColumnMapProcessor();
+
+        // The client never connects, as no documents are sent to MarkLogic
+        client = DatabaseClientFactory.newClient("localhost", 8000, "admin", "admin", DatabaseClientFactory.Authentication.DIGEST);
+        writer = new ColumnMapItemWriter(client, "row");
+        writer.setColumnMapGrouper("ordered".equals(grouping) ? new OrderedColumnMapGrouper() : new ChunkColumnMapGrouper());
+        writer.setDocumentBatchWriter(new DocumentBatchWriter() {
+            @Override
+            public void write(DocumentWriteSet set) {
+                documentCount += set.size();
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @Setup(Level.Invocation)
+    public void buildChunk() throws Exception {
+        int chunkDocuments = 1000 / fanOut;
+        chunk = new ArrayList<>();
+        for (Map<String, Object> row : syntheticRows.schemaRows(nextId, chunkDocuments)) {
+            chunk.add(processor.process(row));
+        }
+        nextId += chunkDocuments;
+        writer.open(new ExecutionContext());
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        writer.write(chunk);
+        writer.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (documentCount != nextId) {
+            throw new IllegalStateException("Expected " + nextId + " documents to be written, but " + documentCount + " were");
+        }
+        client.release();
+    }
+}
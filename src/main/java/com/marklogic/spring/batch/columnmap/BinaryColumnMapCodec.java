@@ -0,0 +1,211 @@
+package com.marklogic.spring.batch.columnmap;
+
+import com.marklogic.spring.batch.item.CompositeKey;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for column maps and the values in them, used when column maps need to be written to local
+ * disk temporarily. Each value is written as a one-byte type tag followed by its value; the types produced by JDBC and
+ * by PathAwareColumnMapProcessor round-trip exactly. Any other type of value is encoded as its string form.
+ */
+public class BinaryColumnMapCodec {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final static byte NULL = 0;
+    private final static byte STRING = 1;
+    private final static byte INTEGER = 2;
+    private final static byte LONG = 3;
+    private final static byte DOUBLE = 4;
+    private final static byte FLOAT = 5;
+    private final static byte SHORT = 6;
+    private final static byte BYTE = 7;
+    private final static byte BIG_DECIMAL = 8;
+    private final static byte BIG_INTEGER = 9;
+    private final static byte BOOLEAN = 10;
+    private final static byte TIMESTAMP = 11;
+    private final static byte SQL_DATE = 12;
+    private final static byte SQL_TIME = 13;
+    private final static byte DATE = 14;
+    private final static byte BYTES = 15;
+    private final static byte MAP = 16;
+    private final static byte LIST = 17;
+    private final static byte COMPOSITE_KEY = 18;
+
+    public void writeColumnMap(Map<String, Object> columnMap, DataOutput out) throws IOException {
+        out.writeInt(columnMap.size());
+        for (Map.Entry<String, Object> entry : columnMap.entrySet()) {
+            writeString(entry.getKey(), out);
+            writeValue(entry.getValue(), out);
+        }
+    }
+
+    public Map<String, Object> readColumnMap(DataInput in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> columnMap = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            columnMap.put(key, readValue(in));
+        }
+        return columnMap;
+    }
+
+    public void writeValue(Object value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(value.toString(), out);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(value.toString(), out);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp ts = (java.sql.Timestamp) value;
+            out.writeByte(TIMESTAMP);
+            out.writeLong(ts.getTime());
+            out.writeInt(ts.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof java.sql.Time) {
+            out.writeByte(SQL_TIME);
+            out.writeLong(((java.sql.Time) value).getTime());
+        } else if (value instanceof java.util.Date) {
+            out.writeByte(DATE);
+            out.writeLong(((java.util.Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            writeColumnMap((Map<String, Object>) value, out);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(item, out);
+            }
+        } else if (value instanceof CompositeKey) {
+            Object[] values = ((CompositeKey) value).getValues();
+            out.writeByte(COMPOSITE_KEY);
+            out.writeInt(values.length);
+            for (Object v : values) {
+                writeValue(v, out);
+            }
+        } else {
+            out.writeByte(STRING);
+            writeString(value.toString(), out);
+        }
+    }
+
+    public Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case BOOLEAN:
+                return in.readBoolean();
+            case TIMESTAMP:
+                java.sql.Timestamp ts = new java.sql.Timestamp(in.readLong());
+                ts.setNanos(in.readInt());
+                return ts;
+            case SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case SQL_TIME:
+                return new java.sql.Time(in.readLong());
+            case DATE:
+                return new java.util.Date(in.readLong());
+            case BYTES:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            case MAP:
+                return readColumnMap(in);
+            case LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case COMPOSITE_KEY:
+                Object[] values = new Object[in.readInt()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readValue(in);
+                }
+                return new CompositeKey(values);
+            default:
+                throw new IOException("Unrecognized type: " + type);
+        }
+    }
+
+    /**
+     * DataOutput.writeUTF is limited to 64k bytes, which is too small for text columns.
+     */
+    private void writeString(String s, DataOutput out) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
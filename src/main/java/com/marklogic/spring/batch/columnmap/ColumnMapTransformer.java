@@ -0,0 +1,24 @@
+package com.marklogic.spring.batch.columnmap;
+
+import java.util.Map;
+
+/**
+ * Transforms a merged column map into the document that is serialized, in the loader instead of in MarkLogic, e.g. to
+ * wrap it in an envelope. Keys of the returned map, and of any map nested within it, may be names in Clark notation -
+ * "{namespace-uri}local-name" - in which case the XML serializer writes a namespaced element and the JSON serializer
+ * writes the local name.
+ */
+public interface ColumnMapTransformer {
+
+    /**
+     * @param columnMap     the column map, after its rows have been merged
+     * @param rootLocalName the name of the root element that the column map would be written with
+     * @return the map to serialize in place of the column map
+     */
+    Map<String, Object> transform(Map<String, Object> columnMap, String rootLocalName);
+
+    /**
+     * @return the name of the root of the transformed document, in Clark notation if it's in a namespace
+     */
+    String getRootName(String rootLocalName);
+}
@@ -1,50 +1,86 @@
 package com.marklogic.spring.batch.columnmap;
 
 import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.client.io.Format;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Default implementation that uses the Stax library to create an XML structure. Any XML library, or even a templating
  * engine like Velocity/Freemarker, could be used here instead.
+ * <p>
+ * The root element is in rootNamespaceUri, if one is given, and a key in Clark notation - "{namespace-uri}local-name"
+ * - is written as an element in that namespace. Namespaces are written with a prefix, never as the default namespace,
+ * so that un-namespaced keys stay in no namespace; the prefix is taken from namespacePrefixes, or generated, and is
+ * declared on the first element that uses the namespace.
  */
-public class DefaultStaxColumnMapSerializer extends LoggingObject implements ColumnMapSerializer {
+public class DefaultStaxColumnMapSerializer extends LoggingObject implements StreamingColumnMapSerializer {
 
     private XMLOutputFactory xmlOutputFactory;
+    private Map<String, String> namespacePrefixes = new HashMap<>();
 
     public DefaultStaxColumnMapSerializer() {
         this.xmlOutputFactory = XMLOutputFactory.newFactory();
+        namespacePrefixes.put(EnvelopeColumnMapTransformer.ES_NAMESPACE, "es");
     }
 
     @Override
     public String serializeColumnMap(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri) {
         StringWriter out = new StringWriter();
         try {
-            XMLStreamWriter sw = xmlOutputFactory.createXMLStreamWriter(out);
-            sw.writeStartElement(rootLocalName);
-            writeColumnMap(columnMap, sw);
-            sw.writeEndElement();
-            sw.flush();
+            writeDocument(columnMap, rootLocalName, rootNamespaceUri, xmlOutputFactory.createXMLStreamWriter(out));
         } catch (XMLStreamException ex) {
             throw new RuntimeException(ex);
         }
         return out.toString();
     }
 
+    @Override
+    public void serializeColumnMap(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri, OutputStream out) {
+        try {
+            writeDocument(columnMap, rootLocalName, rootNamespaceUri, xmlOutputFactory.createXMLStreamWriter(out, "UTF-8"));
+        } catch (XMLStreamException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public Format getFormat() {
+        return Format.XML;
+    }
+
+    private void writeDocument(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri,
+                               XMLStreamWriter sw) throws XMLStreamException {
+        Map<String, String> inScope = Collections.emptyMap();
+        if (rootNamespaceUri != null && !rootNamespaceUri.isEmpty()) {
+            inScope = writeStartElement(rootNamespaceUri, rootLocalName, inScope, sw);
+        } else {
+            sw.writeStartElement(rootLocalName);
+        }
+        writeColumnMap(columnMap, inScope, sw);
+        sw.writeEndElement();
+        sw.flush();
+        sw.close();
+    }
+
     /**
      * Recursive function that will call itself when it finds that the value of a key/value pair in the column map is a
      * Map<String, Object> itself.
      * 
      * @param columnMap
+     * @param inScope   prefixes of the namespaces declared on the enclosing elements, keyed by namespace URI
      * @param sw
      * @throws XMLStreamException
      */
-    private void writeColumnMap(Map<String, Object> columnMap, XMLStreamWriter sw) throws XMLStreamException {
+    private void writeColumnMap(Map<String, Object> columnMap, Map<String, String> inScope, XMLStreamWriter sw) throws XMLStreamException {
         for (String key : columnMap.keySet()) {
             Object value = columnMap.get(key);
             if (value != null) {
@@ -52,9 +88,9 @@ public class DefaultStaxColumnMapSerializer extends LoggingObject implements Col
                     List list = (List) value;
                     for (Object item : list) {
                         if (item != null) {
-                            sw.writeStartElement(key);
+                            Map<String, String> itemScope = writeStartElement(key, inScope, sw);
                             if (item instanceof Map) {
-                                writeColumnMap((Map<String, Object>) item, sw);
+                                writeColumnMap((Map<String, Object>) item, itemScope, sw);
                             } else {
                                 sw.writeCharacters(item.toString());
                             }
@@ -62,8 +98,8 @@ public class DefaultStaxColumnMapSerializer extends LoggingObject implements Col
                         }
                     }
                 } else if (value instanceof Map) {
-                    sw.writeStartElement(key);
-                    writeColumnMap((Map<String, Object>) value, sw);
+                    Map<String, String> valueScope = writeStartElement(key, inScope, sw);
+                    writeColumnMap((Map<String, Object>) value, valueScope, sw);
                     sw.writeEndElement();
                 } else if (value instanceof byte[]) {
                     // TODO Figure out what to do with blobs by default
@@ -71,7 +107,7 @@ public class DefaultStaxColumnMapSerializer extends LoggingObject implements Col
                 } else {
                     String text = value.toString();
                     if (text != null && text.trim().length() > 0) {
-                        sw.writeStartElement(key);
+                        writeStartElement(key, inScope, sw);
                         sw.writeCharacters(text);
                         sw.writeEndElement();
                     }
@@ -80,4 +116,44 @@ public class DefaultStaxColumnMapSerializer extends LoggingObject implements Col
         }
     }
 
+    /**
+     * Writes the start of an element for a key, which may be in Clark notation.
+     *
+     * @return the namespaces in scope for the element's children
+     */
+    private Map<String, String> writeStartElement(String key, Map<String, String> inScope, XMLStreamWriter sw) throws XMLStreamException {
+        if (key.isEmpty() || key.charAt(0) != '{') {
+            sw.writeStartElement(key);
+            return inScope;
+        }
+        int end = key.indexOf('}');
+        return writeStartElement(key.substring(1, end), key.substring(end + 1), inScope, sw);
+    }
+
+    private Map<String, String> writeStartElement(String namespaceUri, String localName, Map<String, String> inScope,
+                                                  XMLStreamWriter sw) throws XMLStreamException {
+        String prefix = inScope.get(namespaceUri);
+        if (prefix != null) {
+            sw.writeStartElement(prefix, localName, namespaceUri);
+            return inScope;
+        }
+        prefix = namespacePrefixes.get(namespaceUri);
+        if (prefix == null) {
+            prefix = "ns" + namespacePrefixes.size();
+            namespacePrefixes.put(namespaceUri, prefix);
+        }
+        sw.writeStartElement(prefix, localName, namespaceUri);
+        sw.writeNamespace(prefix, namespaceUri);
+        Map<String, String> scope = new HashMap<>(inScope);
+        scope.put(namespaceUri, prefix);
+        return scope;
+    }
+
+    /**
+     * @param namespacePrefixes prefixes to use for namespaces, keyed by namespace URI; es is used for the Entity
+     *                          Services namespace by default
+     */
+    public void setNamespacePrefixes(Map<String, String> namespacePrefixes) {
+        this.namespacePrefixes = new HashMap<>(namespacePrefixes);
+    }
 }
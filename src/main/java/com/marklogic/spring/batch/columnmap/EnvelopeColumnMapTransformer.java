@@ -0,0 +1,83 @@
+package com.marklogic.spring.batch.columnmap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wraps a column map in an Entity Services envelope, as the envelope REST transform does in MarkLogic:
+ * <pre>
+ * &lt;es:envelope&gt;
+ *   &lt;es:instance&gt;
+ *     &lt;es:info&gt;&lt;es:title&gt;customer&lt;/es:title&gt;&lt;es:version&gt;1.0&lt;/es:version&gt;&lt;/es:info&gt;
+ *     &lt;customer&gt;...&lt;/customer&gt;
+ *     (an element for each instance property)
+ *   &lt;/es:instance&gt;
+ *   &lt;es:attachments/&gt;
+ * &lt;/es:envelope&gt;
+ * </pre>
+ * The title defaults to the root local name. If attachSource is true, the column map is also added to the
+ * attachments, so that the source data is kept alongside an instance that is later changed.
+ */
+public class EnvelopeColumnMapTransformer implements ColumnMapTransformer {
+
+    public static final String ES_NAMESPACE = "http://marklogic.com/entity-services";
+
+    private static final String ENVELOPE = "{" + ES_NAMESPACE + "}envelope";
+    private static final String INSTANCE = "{" + ES_NAMESPACE + "}instance";
+    private static final String INFO = "{" + ES_NAMESPACE + "}info";
+    private static final String TITLE = "{" + ES_NAMESPACE + "}title";
+    private static final String VERSION = "{" + ES_NAMESPACE + "}version";
+    private static final String ATTACHMENTS = "{" + ES_NAMESPACE + "}attachments";
+
+    private String title;
+    private String version = "1.0";
+    private Map<String, String> instanceProperties = new LinkedHashMap<>();
+    private boolean attachSource = false;
+
+    @Override
+    public Map<String, Object> transform(Map<String, Object> columnMap, String rootLocalName) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put(TITLE, title != null ? title : rootLocalName);
+        info.put(VERSION, version);
+
+        Map<String, Object> instance = new LinkedHashMap<>();
+        instance.put(INFO, info);
+        instance.put(rootLocalName, columnMap);
+        instance.putAll(instanceProperties);
+
+        Map<String, Object> attachments = new LinkedHashMap<>();
+        if (attachSource) {
+            attachments.put(rootLocalName, columnMap);
+        }
+
+        Map<String, Object> envelope = new LinkedHashMap<>();
+        envelope.put(INSTANCE, instance);
+        envelope.put(ATTACHMENTS, attachments);
+        return envelope;
+    }
+
+    @Override
+    public String getRootName(String rootLocalName) {
+        return ENVELOPE;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * @param instanceProperties added to the instance after the column map, in the same way that the envelope REST
+     *                           transform adds its parameters
+     */
+    public void setInstanceProperties(Map<String, String> instanceProperties) {
+        this.instanceProperties = instanceProperties;
+    }
+
+    public void setAttachSource(boolean attachSource) {
+        this.attachSource = attachSource;
+    }
+}
@@ -0,0 +1,50 @@
+package com.marklogic.spring.batch.columnmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * List of the distinct values or child column maps merged under a single key, with a hash index so that finding the
+ * element with a given key doesn't require scanning the list. It's an ordinary List to the serializers.
+ */
+public class IndexedChildList extends ArrayList<Object> {
+
+    private final Map<Object, Object> index = new HashMap<>();
+
+    public IndexedChildList() {
+        super();
+    }
+
+    /**
+     * @return the element that was added with the key, or null if there is none
+     */
+    public Object getByKey(Object key) {
+        return index.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    public void addChild(Object key, Object element) {
+        index.put(key, element);
+        super.add(element);
+    }
+
+    /**
+     * Used when a plain list - e.g. one read back from disk - has to be indexed.
+     */
+    public static IndexedChildList of(List<?> elements, ChildKeyFunction keyFunction) {
+        IndexedChildList list = new IndexedChildList();
+        for (Object element : elements) {
+            list.addChild(keyFunction.keyOf(element), element);
+        }
+        return list;
+    }
+
+    public interface ChildKeyFunction {
+        Object keyOf(Object element);
+    }
+}
@@ -1,24 +1,266 @@
 package com.marklogic.spring.batch.columnmap;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.client.io.Format;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
-public class JsonColumnMapSerializer implements ColumnMapSerializer {
+/**
+ * Streams a column map to JSON via a Jackson JsonGenerator. How a value is written is determined once per value class
+ * and then looked up, instead of relying on ObjectMapper's serializer lookup. Values are written in forms that are
+ * predictable for range indexes:
+ * <ul>
+ * <li>Timestamps as ISO-8601 date-times with an offset, SQL dates as ISO-8601 dates, and SQL times as ISO-8601
+ * times. A SQL timestamp keeps its fractional seconds up to nanoseconds, with at least 3 digits; other dates are
+ * written with milliseconds</li>
+ * <li>Floats and doubles as the shortest decimal that represents them, so a float 1.1 is written as 1.1</li>
+ * <li>BigDecimals as exact numbers, never in scientific notation</li>
+ * <li>Blobs as base64 strings, or skipped entirely</li>
+ * </ul>
+ * By default, the column map is the top-level object; when wrapInRoot is true, it's wrapped in an object with a single
+ * key equal to the root local name. Keys in Clark notation are written as their local names.
+ * <p>
+ * Instances are not thread-safe, as the date formats are reused.
+ */
+public class JsonColumnMapSerializer implements StreamingColumnMapSerializer {
 
-    private ObjectMapper mapper = new ObjectMapper();
+    public enum BlobMode {
+        BASE64, SKIP
+    }
+
+    private enum ValueType {
+        STRING, INT, LONG, FLOAT, DOUBLE, BIG_DECIMAL, BIG_INTEGER, BOOLEAN, TIMESTAMP, DATE, TIME, BYTES, MAP, LIST, OTHER
+    }
+
+    private JsonFactory jsonFactory;
+    private boolean wrapInRoot = false;
+    private BlobMode blobMode = BlobMode.BASE64;
+
+    private SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    private SimpleDateFormat secondsFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    private SimpleDateFormat offsetFormat = new SimpleDateFormat("XXX");
+    private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+    private Map<Class<?>, ValueType> valueTypes = new HashMap<>();
+
+    public JsonColumnMapSerializer() {
+        setJsonFactory(new JsonFactory());
+    }
 
     @Override
     public String serializeColumnMap(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonGenerator generator = jsonFactory.createGenerator(out);
+            writeDocument(columnMap, rootLocalName, generator);
+            generator.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void serializeColumnMap(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri, OutputStream out) {
         try {
-            return mapper.writeValueAsString(columnMap);
-        } catch (JsonProcessingException e) {
+            JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+            writeDocument(columnMap, rootLocalName, generator);
+            generator.close();
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public Format getFormat() {
+        return Format.JSON;
+    }
+
+    private void writeDocument(Map<String, Object> columnMap, String rootLocalName, JsonGenerator generator) throws IOException {
+        if (wrapInRoot) {
+            generator.writeStartObject();
+            generator.writeFieldName(rootLocalName);
+            writeColumnMap(columnMap, generator);
+            generator.writeEndObject();
+        } else {
+            writeColumnMap(columnMap, generator);
+        }
+    }
+
+    private void writeColumnMap(Map<String, Object> columnMap, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : columnMap.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof byte[] && blobMode == BlobMode.SKIP) {
+                continue;
+            }
+            generator.writeFieldName(localName(entry.getKey()));
+            writeValue(value, generator);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * JSON has no namespaces, so a key in Clark notation - "{namespace-uri}local-name" - is written as its local name.
+     */
+    private String localName(String key) {
+        return !key.isEmpty() && key.charAt(0) == '{' ? key.substring(key.indexOf('}') + 1) : key;
+    }
+
+    private void writeValue(Object value, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+            return;
+        }
+        switch (getValueType(value.getClass())) {
+            case STRING:
+                generator.writeString((String) value);
+                break;
+            case INT:
+                generator.writeNumber(((Number) value).intValue());
+                break;
+            case LONG:
+                generator.writeNumber((Long) value);
+                break;
+            case FLOAT:
+                generator.writeNumber(((Float) value).floatValue());
+                break;
+            case DOUBLE:
+                generator.writeNumber(((Number) value).doubleValue());
+                break;
+            case BIG_DECIMAL:
+                generator.writeNumber((BigDecimal) value);
+                break;
+            case BIG_INTEGER:
+                generator.writeNumber((BigInteger) value);
+                break;
+            case BOOLEAN:
+                generator.writeBoolean((Boolean) value);
+                break;
+            case TIMESTAMP:
+                generator.writeString(formatDateTime((java.util.Date) value));
+                break;
+            case DATE:
+                generator.writeString(dateFormat.format((java.util.Date) value));
+                break;
+            case TIME:
+                generator.writeString(timeFormat.format((java.util.Date) value));
+                break;
+            case BYTES:
+                if (blobMode == BlobMode.SKIP) {
+                    generator.writeNull();
+                } else {
+                    generator.writeBinary((byte[]) value);
+                }
+                break;
+            case MAP:
+                writeColumnMap((Map<String, Object>) value, generator);
+                break;
+            case LIST:
+                generator.writeStartArray();
+                for (Object item : (Collection<?>) value) {
+                    writeValue(item, generator);
+                }
+                generator.writeEndArray();
+                break;
+            default:
+                generator.writeString(value.toString());
+        }
+    }
+
+    /**
+     * SimpleDateFormat only knows milliseconds, so the fraction of a SQL timestamp is written from its nanos, without
+     * trailing zeros beyond the milliseconds.
+     */
+    private String formatDateTime(java.util.Date date) {
+        if (!(date instanceof java.sql.Timestamp)) {
+            return dateTimeFormat.format(date);
+        }
+        String fraction = String.format("%09d", ((java.sql.Timestamp) date).getNanos());
+        int length = fraction.length();
+        while (length > 3 && fraction.charAt(length - 1) == '0') {
+            length--;
+        }
+        return secondsFormat.format(date) + "." + fraction.substring(0, length) + offsetFormat.format(date);
+    }
+
+    private ValueType getValueType(Class<?> valueClass) {
+        ValueType type = valueTypes.get(valueClass);
+        if (type == null) {
+            type = determineValueType(valueClass);
+            valueTypes.put(valueClass, type);
+        }
+        return type;
+    }
+
+    private ValueType determineValueType(Class<?> valueClass) {
+        if (String.class.equals(valueClass)) {
+            return ValueType.STRING;
+        } else if (Integer.class.equals(valueClass) || Short.class.equals(valueClass) || Byte.class.equals(valueClass)) {
+            return ValueType.INT;
+        } else if (Long.class.equals(valueClass)) {
+            return ValueType.LONG;
+        } else if (Float.class.equals(valueClass)) {
+            return ValueType.FLOAT;
+        } else if (Double.class.equals(valueClass)) {
+            return ValueType.DOUBLE;
+        } else if (BigDecimal.class.equals(valueClass)) {
+            return ValueType.BIG_DECIMAL;
+        } else if (BigInteger.class.equals(valueClass)) {
+            return ValueType.BIG_INTEGER;
+        } else if (Boolean.class.equals(valueClass)) {
+            return ValueType.BOOLEAN;
+        } else if (java.sql.Date.class.isAssignableFrom(valueClass)) {
+            return ValueType.DATE;
+        } else if (java.sql.Time.class.isAssignableFrom(valueClass)) {
+            return ValueType.TIME;
+        } else if (java.util.Date.class.isAssignableFrom(valueClass)) {
+            return ValueType.TIMESTAMP;
+        } else if (byte[].class.equals(valueClass)) {
+            return ValueType.BYTES;
+        } else if (Map.class.isAssignableFrom(valueClass)) {
+            return ValueType.MAP;
+        } else if (Collection.class.isAssignableFrom(valueClass)) {
+            return ValueType.LIST;
+        }
+        return ValueType.OTHER;
+    }
+
+    /**
+     * The factory is configured to not close the OutputStream it writes to, and to write BigDecimals as plain
+     * numbers.
+     */
+    public void setJsonFactory(JsonFactory jsonFactory) {
+        jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jsonFactory.enable(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN);
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * @deprecated column maps are no longer written by an ObjectMapper, so only the mapper's JsonFactory is used; use
+     * setJsonFactory instead
+     */
+    @Deprecated
     public void setMapper(ObjectMapper mapper) {
-        this.mapper = mapper;
+        setJsonFactory(mapper.getFactory());
+    }
+
+    public void setWrapInRoot(boolean wrapInRoot) {
+        this.wrapInRoot = wrapInRoot;
+    }
+
+    public void setBlobMode(BlobMode blobMode) {
+        this.blobMode = blobMode;
     }
 }
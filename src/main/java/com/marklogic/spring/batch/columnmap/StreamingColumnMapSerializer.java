@@ -0,0 +1,24 @@
+package com.marklogic.spring.batch.columnmap;
+
+import com.marklogic.client.io.Format;
+
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * A ColumnMapSerializer that can write a column map directly as UTF-8 bytes, which avoids building an intermediate
+ * String. ColumnMapItemWriter uses this when its serializer implements it, and otherwise serializes each column map to
+ * a String.
+ */
+public interface StreamingColumnMapSerializer extends ColumnMapSerializer {
+
+    /**
+     * Writes the column map as UTF-8 bytes to the given stream. The stream is not closed.
+     */
+    void serializeColumnMap(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri, OutputStream out);
+
+    /**
+     * @return the format of the serialized documents, which determines e.g. the extension of their URIs
+     */
+    Format getFormat();
+}
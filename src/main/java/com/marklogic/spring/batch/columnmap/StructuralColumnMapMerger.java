@@ -0,0 +1,147 @@
+package com.marklogic.spring.batch.columnmap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges column maps whose nested maps - as produced by PathAwareColumnMapProcessor - represent child records. Unlike
+ * DefaultColumnMapMerger, which collects every differing value into a list, this identifies each child by its child
+ * key and merges the rows for the same child into a single column map, recursively. Children are kept in an
+ * IndexedChildList, so finding a child is a hash lookup rather than a scan, and merging a parent with n children takes
+ * linear rather than quadratic time. Two one-to-many joins therefore produce one list entry per child, rather than one
+ * per combination of child rows.
+ * <p>
+ * A child's key is the value of its key field, which defaults to the first field of the child map, e.g. "id" for a
+ * child built from "invoice/id" and "invoice/total". A child whose key is null - e.g. from a LEFT JOIN with no
+ * matching row - is ignored once the parent has any child with a key. Scalar values that differ are collected into a
+ * list of distinct values. Either column map may already be the result of a merge, so a list in the source is merged
+ * one element at a time.
+ */
+public class StructuralColumnMapMerger implements ColumnMapMerger {
+
+    private Map<String, String> childKeyFields = new HashMap<>();
+
+    @Override
+    public void mergeColumnMaps(Map<String, Object> targetColumnMap, Map<String, Object> sourceColumnMap) {
+        merge(targetColumnMap, sourceColumnMap, null);
+    }
+
+    protected void merge(Map<String, Object> target, Map<String, Object> source, String parentPath) {
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            String key = entry.getKey();
+            Object newValue = entry.getValue();
+            if (!target.containsKey(key)) {
+                target.put(key, newValue);
+                continue;
+            }
+            Object existingValue = target.get(key);
+            if (newValue == null || newValue.equals(existingValue)) {
+                continue;
+            }
+            String path = parentPath != null ? parentPath + "/" + key : key;
+            if (newValue instanceof List) {
+                // The source was already merged, e.g. a group read back from a spilled run, so each of its children
+                // or distinct values is merged in turn
+                for (Object item : (List<?>) newValue) {
+                    mergeItem(target, key, item, path);
+                }
+            } else {
+                mergeItem(target, key, newValue, path);
+            }
+        }
+    }
+
+    private void mergeItem(Map<String, Object> target, String key, Object newValue, String path) {
+        Object existingValue = target.get(key);
+        if (newValue == null || newValue.equals(existingValue)) {
+            return;
+        }
+        if (newValue instanceof Map) {
+            mergeChild(target, key, existingValue, (Map<String, Object>) newValue, path);
+        } else {
+            mergeValue(target, key, existingValue, newValue, path);
+        }
+    }
+
+    private void mergeChild(Map<String, Object> target, String key, Object existingValue, Map<String, Object> child, String path) {
+        Object childKey = childKeyOf(child, path);
+        if (existingValue instanceof Map) {
+            Map<String, Object> existingChild = (Map<String, Object>) existingValue;
+            Object existingKey = childKeyOf(existingChild, path);
+            if (childKey == null || childKey.equals(existingKey)) {
+                merge(existingChild, child, path);
+                return;
+            }
+            if (existingKey == null) {
+                target.put(key, child);
+                return;
+            }
+        } else if (existingValue == null) {
+            target.put(key, child);
+            return;
+        }
+        if (childKey == null) {
+            return;
+        }
+        IndexedChildList list = toIndexedList(target, key, existingValue, path);
+        Object existingChild = list.getByKey(childKey);
+        if (existingChild instanceof Map) {
+            merge((Map<String, Object>) existingChild, child, path);
+        } else {
+            list.addChild(childKey, child);
+        }
+    }
+
+    private void mergeValue(Map<String, Object> target, String key, Object existingValue, Object newValue, String path) {
+        if (existingValue == null) {
+            target.put(key, newValue);
+            return;
+        }
+        IndexedChildList list = toIndexedList(target, key, existingValue, path);
+        if (!list.containsKey(newValue)) {
+            list.addChild(newValue, newValue);
+        }
+    }
+
+    /**
+     * Converts the existing value into an IndexedChildList if it isn't one already; this also handles plain lists,
+     * e.g. from column maps that were spilled to disk.
+     */
+    private IndexedChildList toIndexedList(Map<String, Object> target, String key, Object existingValue, final String path) {
+        if (existingValue instanceof IndexedChildList) {
+            return (IndexedChildList) existingValue;
+        }
+        IndexedChildList.ChildKeyFunction keyFunction = new IndexedChildList.ChildKeyFunction() {
+            @Override
+            public Object keyOf(Object element) {
+                return element instanceof Map ? childKeyOf((Map<String, Object>) element, path) : element;
+            }
+        };
+        IndexedChildList list;
+        if (existingValue instanceof List) {
+            list = IndexedChildList.of((List<?>) existingValue, keyFunction);
+        } else {
+            list = new IndexedChildList();
+            list.addChild(keyFunction.keyOf(existingValue), existingValue);
+        }
+        target.put(key, list);
+        return list;
+    }
+
+    protected Object childKeyOf(Map<String, Object> child, String path) {
+        String keyField = childKeyFields.get(path);
+        if (keyField != null) {
+            return child.get(keyField);
+        }
+        return child.isEmpty() ? null : child.values().iterator().next();
+    }
+
+    /**
+     * @param childKeyFields maps the path of a child, e.g. "invoice" or "invoice/line", to the field that identifies
+     *                       the child; children whose path isn't mapped are identified by their first field
+     */
+    public void setChildKeyFields(Map<String, String> childKeyFields) {
+        this.childKeyFields = childKeyFields;
+    }
+}
@@ -0,0 +1,102 @@
+package com.marklogic.spring.batch.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.spring.batch.jdbc.RowQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A file listing the queries to migrate in a single run, e.g.
+ * <pre>
+ * {"jobs": [
+ *   {"name": "customers", "sql": "SELECT * FROM customer", "root_local_name": "customer", "format": "json"},
+ *   {"sql": "SELECT * FROM invoice", "root_local_name": "invoice", "collections": ["invoice", "sales"],
+ *    "partition_column": "id", "estimated_rows": 25000000}
+ * ]}
+ * </pre>
+ * Each entry must have sql and root_local_name. The name, which is used in step names, defaults to the root local name.
+ */
+public class Manifest {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private List<ManifestEntry> jobs = new ArrayList<>();
+
+    public static Manifest read(File file) {
+        Manifest manifest;
+        try {
+            manifest = new ObjectMapper().readValue(file, Manifest.class);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to read manifest " + file.getAbsolutePath() + ": " + ex.getMessage(), ex);
+        }
+        manifest.validate();
+        return manifest;
+    }
+
+    protected void validate() {
+        if (jobs.isEmpty()) {
+            throw new IllegalArgumentException("The manifest must list at least one job");
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            ManifestEntry entry = jobs.get(i);
+            if (entry.getSql() == null || entry.getRootLocalName() == null) {
+                throw new IllegalArgumentException("Job " + (i + 1) + " in the manifest must have sql and root_local_name");
+            }
+            String name = entry.getName() != null ? entry.getName() : entry.getRootLocalName();
+            if (!names.add(name)) {
+                name = name + "-" + (i + 1);
+                names.add(name);
+            }
+            entry.setName(name);
+        }
+    }
+
+    /**
+     * Orders the jobs from the most rows to the fewest, counting the rows of any job without an estimate. Starting the
+     * largest jobs first keeps a single large job from starting last and running alone long after the others have
+     * finished.
+     */
+    public List<ManifestEntry> getJobsLargestFirst(DataSource dataSource) {
+        for (ManifestEntry entry : jobs) {
+            Long estimate = entry.getEstimatedRows();
+            if (estimate == null) {
+                estimate = new RowQuery(entry.getSql()).countRows(dataSource);
+                entry.setEstimatedRows(estimate);
+            }
+        }
+        List<ManifestEntry> sorted = new ArrayList<>(jobs);
+        Collections.sort(sorted, new Comparator<ManifestEntry>() {
+            @Override
+            public int compare(ManifestEntry e1, ManifestEntry e2) {
+                return Long.compare(e2.getEstimatedRows(), e1.getEstimatedRows());
+            }
+        });
+        if (logger.isInfoEnabled()) {
+            StringBuilder sb = new StringBuilder("Running jobs in order:");
+            for (ManifestEntry entry : sorted) {
+                sb.append(" ").append(entry.getName()).append(" (").append(entry.getEstimatedRows()).append(" rows)");
+            }
+            logger.info(sb.toString());
+        }
+        return sorted;
+    }
+
+    public List<ManifestEntry> getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(List<ManifestEntry> jobs) {
+        this.jobs = jobs;
+    }
+}
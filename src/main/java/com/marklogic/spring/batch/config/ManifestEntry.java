@@ -0,0 +1,130 @@
+package com.marklogic.spring.batch.config;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One query in a manifest, along with how its rows are converted into documents. The fields mirror the RowToDoc
+ * options of the same name; options that aren't listed here, e.g. grouping and chunk_size, apply to every query.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ManifestEntry {
+
+    private String name;
+    private String sql;
+    private String format = "xml";
+    private String rootLocalName;
+    private String[] collections;
+    private String transformName = "";
+    private String transformParameters = "";
+    private String clientTransform;
+    private String[] idColumns;
+    private String partitionColumn = "";
+    private Long estimatedRows;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    @JsonProperty("root_local_name")
+    public String getRootLocalName() {
+        return rootLocalName;
+    }
+
+    @JsonProperty("root_local_name")
+    public void setRootLocalName(String rootLocalName) {
+        this.rootLocalName = rootLocalName;
+    }
+
+    public String[] getCollections() {
+        return collections;
+    }
+
+    public void setCollections(String[] collections) {
+        this.collections = collections;
+    }
+
+    @JsonProperty("transform_name")
+    public String getTransformName() {
+        return transformName;
+    }
+
+    @JsonProperty("transform_name")
+    public void setTransformName(String transformName) {
+        this.transformName = transformName != null ? transformName : "";
+    }
+
+    @JsonProperty("transform_parameters")
+    public String getTransformParameters() {
+        return transformParameters;
+    }
+
+    @JsonProperty("transform_parameters")
+    public void setTransformParameters(String transformParameters) {
+        this.transformParameters = transformParameters != null ? transformParameters : "";
+    }
+
+    @JsonProperty("client_transform")
+    public String getClientTransform() {
+        return clientTransform;
+    }
+
+    @JsonProperty("client_transform")
+    public void setClientTransform(String clientTransform) {
+        this.clientTransform = clientTransform;
+    }
+
+    @JsonProperty("id_columns")
+    public String[] getIdColumns() {
+        return idColumns;
+    }
+
+    @JsonProperty("id_columns")
+    public void setIdColumns(String[] idColumns) {
+        this.idColumns = idColumns;
+    }
+
+    @JsonProperty("partition_column")
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    @JsonProperty("partition_column")
+    public void setPartitionColumn(String partitionColumn) {
+        this.partitionColumn = partitionColumn != null ? partitionColumn : "";
+    }
+
+    /**
+     * @return the number of rows the query is expected to return, used for scheduling the largest queries first; if
+     * null, the rows are counted
+     */
+    @JsonProperty("estimated_rows")
+    public Long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    @JsonProperty("estimated_rows")
+    public void setEstimatedRows(Long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+}
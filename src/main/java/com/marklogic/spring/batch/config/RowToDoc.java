@@ -1,34 +1,90 @@
 package com.marklogic.spring.batch.config;
 
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
 import com.marklogic.client.document.DocumentWriteOperation;
 import com.marklogic.client.helper.DatabaseClientProvider;
 import com.marklogic.client.io.DocumentMetadataHandle;
 import com.marklogic.client.io.Format;
 import com.marklogic.spring.batch.Options;
+import com.marklogic.spring.batch.columnmap.ColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.ColumnMapTransformer;
+import com.marklogic.spring.batch.columnmap.DefaultStaxColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.EnvelopeColumnMapTransformer;
 import com.marklogic.spring.batch.columnmap.JsonColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.StructuralColumnMapMerger;
 import com.marklogic.spring.batch.item.PathAwareColumnMapProcessor;
+import com.marklogic.spring.batch.item.RetryingDocumentBatchWriter;
 import com.marklogic.spring.batch.config.support.OptionParserConfigurer;
+import com.marklogic.spring.batch.item.AdaptiveBatchSizer;
+import com.marklogic.spring.batch.item.BlobUploader;
 import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import com.marklogic.spring.batch.item.ContentHashIndex;
+import com.marklogic.spring.batch.item.DeadLetterFile;
+import com.marklogic.spring.batch.item.DirectoryDocumentBatchWriter;
+import com.marklogic.spring.batch.item.DocumentBatchWriter;
+import com.marklogic.spring.batch.item.DocumentManagerBatchWriter;
+import com.marklogic.spring.batch.item.LoadBalancingDocumentBatchWriter;
+import com.marklogic.spring.batch.item.OrderedColumnMapGrouper;
+import com.marklogic.spring.batch.item.SpillingColumnMapGrouper;
+import com.marklogic.spring.batch.item.WriteBatcherDocumentBatchWriter;
+import com.marklogic.spring.batch.item.ZipDocumentBatchWriter;
+import com.marklogic.spring.batch.jdbc.BlobStreamingRowMapper;
+import com.marklogic.spring.batch.jdbc.CheckpointedCursorItemReader;
+import com.marklogic.spring.batch.jdbc.ColumnPartitioner;
+import com.marklogic.spring.batch.jdbc.CompiledColumnMapRowMapper;
+import com.marklogic.spring.batch.jdbc.KeysetPagingItemReader;
+import com.marklogic.spring.batch.jdbc.MergeJoinItemReader;
+import com.marklogic.spring.batch.jdbc.MeteredDataSource;
+import com.marklogic.spring.batch.jdbc.RowQuery;
+import com.marklogic.spring.batch.metrics.PipelineMetrics;
 import joptsimple.OptionParser;
+import org.apache.commons.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.CommandLinePropertySource;
+import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.Environment;
-import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
 
 import javax.sql.DataSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -48,11 +104,57 @@ public class RowToDoc implements OptionParserConfigurer {
         parser.accepts("format", "The format of the documents written to MarkLogic - either xml or json").withRequiredArg().defaultsTo("xml");
         parser.accepts("rootLocalName", "Name of the root element in each document written to MarkLogic").withRequiredArg();
         parser.accepts("collections", "Comma-separated list of collections to add each document to").withRequiredArg();
+        parser.accepts("client_transform", "Transforms each document in rowToDoc instead of MarkLogic - either envelope, to wrap it in an Entity Services envelope, or the name of a class that implements ColumnMapTransformer").withRequiredArg();
+        parser.accepts("envelope_properties", "With client_transform envelope; comma-separated names and values, e.g. name1,value1,name2,value2, added as properties of the envelope's instance").withRequiredArg();
+        parser.accepts("envelope_attach_source", "With client_transform envelope; if true, the document is also added to the envelope's attachments").withRequiredArg();
+        parser.accepts("json_wrap_root", "For json; if true, each document is wrapped in an object whose only key is root_local_name").withRequiredArg();
+        parser.accepts("json_blobs", "For json; either base64 (the default) to write blobs as base64 strings, or skip to leave them out").withRequiredArg();
+        parser.accepts("partition_column", "Column for partitioning the rows so they can be read and written concurrently; should be the ID column when rows are merged").withRequiredArg();
+        parser.accepts("partitions", "Number of partitions when partition_column is set").withRequiredArg().defaultsTo("4");
+        parser.accepts("partition_hash_function", "SQL function for hashing a non-integral partition column, e.g. ORA_HASH").withRequiredArg();
+        parser.accepts("threads", "Maximum number of partitions to process concurrently").withRequiredArg();
+        parser.accepts("jdbc_pool_size", "Enables a pool of JDBC connections with this maximum size; should be at least the number of threads").withRequiredArg();
+        parser.accepts("jdbc_validation_query", "For a JDBC connection pool; query for validating a connection before it's used").withRequiredArg();
+        parser.accepts("jdbc_statement_cache_size", "For a JDBC connection pool; number of prepared statements cached per connection").withRequiredArg();
+        parser.accepts("chunk_size", "Number of rows read and processed in each transaction; defaults to 10, or 1000 with adaptive batching").withRequiredArg();
+        parser.accepts("batch_target_latency", "Enables adaptive batching; target time in milliseconds for writing a set of documents to MarkLogic").withRequiredArg();
+        parser.accepts("grouping", "How rows are grouped into documents - either chunk; ordered when the query is ordered by the ID column(s); or external for unordered queries whose rows don't fit in memory").withRequiredArg().defaultsTo("chunk");
+        parser.accepts("grouping_heap_budget", "For external grouping; megabytes of rows to buffer in memory before spilling them to disk").withRequiredArg().defaultsTo("256");
+        parser.accepts("grouping_temp_dir", "For external grouping; directory for the files that rows are spilled to").withRequiredArg();
+        parser.accepts("id_columns", "Comma-separated list of the column(s) that identify a document; defaults to the first column").withRequiredArg();
+        parser.accepts("write_threads", "Enables asynchronous writes via a Data Movement SDK WriteBatcher with this many threads").withRequiredArg();
+        parser.accepts("write_batch_size", "Number of documents in each batch written by the WriteBatcher").withRequiredArg().defaultsTo("100");
+        parser.accepts("output_dir", "Writes each document to a file under this directory instead of MarkLogic").withRequiredArg();
+        parser.accepts("output_zip", "Writes documents to zip archives in this directory instead of MarkLogic").withRequiredArg();
+        parser.accepts("output_zip_size", "With output_zip; megabytes of content after which a new archive is started").withRequiredArg().defaultsTo("512");
+        parser.accepts("dead_letter_file", "Enables isolating documents that can't be written; failed sets are retried and split, and the documents that still fail are added to this file").withRequiredArg();
+        parser.accepts("write_retries", "With dead_letter_file; number of times a set is retried after a transient failure").withRequiredArg().defaultsTo("3");
+        parser.accepts("write_retry_backoff", "With dead_letter_file; milliseconds before the first retry, doubled for each subsequent retry").withRequiredArg().defaultsTo("500");
+        parser.accepts("hosts", "Comma-separated list of MarkLogic hosts to spread writes across; each uses the same port, username and password").withRequiredArg();
+        parser.accepts("batch_max_bytes", "Enables adaptive batching; maximum number of bytes in a set of documents written to MarkLogic").withRequiredArg();
+        parser.accepts("watermark_column", "Enables incremental loads; only rows whose value of this column is greater than the highest value written by the last completed run are selected").withRequiredArg();
+        parser.accepts("hash_index_file", "Enables skipping unchanged documents; file for storing a hash of the content of each document written").withRequiredArg();
+        parser.accepts("restartable", "If true, a failed step resumes after the last document written; requires id_columns and ordered grouping").withRequiredArg();
+        parser.accepts("page_size", "Enables keyset paging; instead of holding one cursor open, the query is read in pages of this many rows, each starting after the last ID of the previous page").withRequiredArg();
+        parser.accepts("page_limit_clause", "With page_size; clause that limits the rows in each page, with %d replaced by the page size").withRequiredArg().defaultsTo("FETCH FIRST %d ROWS ONLY");
+        parser.accepts("merger", "How the rows for a document are merged - either default, or structural to merge nested child records by their first field").withRequiredArg().defaultsTo("default");
+        parser.accepts("metrics", "If true, per-stage metrics are published via JMX and logged when the step finishes").withRequiredArg();
+        parser.accepts("metrics_interval", "When metrics are enabled; seconds between summary log lines while the step runs, or 0 for none").withRequiredArg().defaultsTo("60");
+        parser.accepts("child", "A child query of the form name=SQL; repeat the option for each child. The first column(s) of each hold the parent's ID, and each child's rows are added to its parent's document under the name. String IDs must be ordered by the database as Java orders them, e.g. via a binary collation").withRequiredArg();
+        parser.accepts("manifest", "JSON file listing queries to migrate in a single run, each with its own root_local_name, collections, format and transform; the largest run first").withRequiredArg();
+        parser.accepts("blobs", "How binary columns are handled - either inline, or stream to write each one as a binary document referenced by its URI").withRequiredArg().defaultsTo("inline");
+        parser.accepts("blob_upload_threads", "When streaming blobs; maximum number of binary documents written concurrently").withRequiredArg().defaultsTo("4");
     }
 
     @Bean
-    public Job job(JobBuilderFactory jobBuilderFactory, @Qualifier("step1") Step step1) {
-        return jobBuilderFactory.get("rowToDocConfig").start(step1).build();
+    public Job job(JobBuilderFactory jobBuilderFactory, @Qualifier("step1") Step step1,
+                   WatermarkJobListener watermarkJobListener) {
+        return jobBuilderFactory.get("rowToDocConfig").listener(watermarkJobListener).start(step1).build();
+    }
+
+    @Bean
+    public WatermarkJobListener watermarkJobListener(JobExplorer jobExplorer, JobRepository jobRepository) {
+        return new WatermarkJobListener(jobExplorer, jobRepository);
     }
 
     @Bean
@@ -65,16 +167,456 @@ public class RowToDoc implements OptionParserConfigurer {
             @Value("#{jobParameters['root_local_name']}") String rootLocalName,
             @Value("#{jobParameters['collections']}") String[] collections,
             @Value("#{jobParameters['transform_name'] ?: ''}") String transformName,
-            @Value("#{jobParameters['transform_parameters'] ?: ''}") String transformParameters) {
+            @Value("#{jobParameters['transform_parameters'] ?: ''}") String transformParameters,
+            @Value("#{jobParameters['client_transform']}") String clientTransform,
+            @Value("#{jobParameters['envelope_properties']}") String envelopeProperties,
+            @Value("#{jobParameters['envelope_attach_source'] ?: 'false'}") boolean envelopeAttachSource,
+            @Value("#{jobParameters['json_wrap_root'] ?: 'false'}") boolean jsonWrapRoot,
+            @Value("#{jobParameters['json_blobs'] ?: 'base64'}") String jsonBlobs,
+            @Value("#{jobParameters['partition_column'] ?: ''}") String partitionColumn,
+            @Value("#{jobParameters['partitions'] ?: '4'}") int partitions,
+            @Value("#{jobParameters['partition_hash_function']}") String partitionHashFunction,
+            @Value("#{jobParameters['threads'] ?: '0'}") int threads,
+            @Value("#{jobParameters['chunk_size'] ?: '0'}") int chunkSize,
+            @Value("#{jobParameters['batch_target_latency'] ?: '0'}") long batchTargetLatency,
+            @Value("#{jobParameters['batch_max_bytes'] ?: '0'}") long batchMaxBytes,
+            @Value("#{jobParameters['write_threads'] ?: '0'}") int writeThreads,
+            @Value("#{jobParameters['write_batch_size'] ?: '100'}") int writeBatchSize,
+            @Value("#{jobParameters['hosts']}") String[] hosts,
+            @Value("#{jobParameters['output_dir']}") String outputDir,
+            @Value("#{jobParameters['output_zip']}") String outputZip,
+            @Value("#{jobParameters['output_zip_size'] ?: '512'}") long outputZipSize,
+            @Value("#{jobParameters['dead_letter_file']}") String deadLetterFileName,
+            @Value("#{jobParameters['write_retries'] ?: '3'}") int writeRetries,
+            @Value("#{jobParameters['write_retry_backoff'] ?: '500'}") long writeRetryBackoff,
+            @Value("#{jobParameters['grouping'] ?: 'chunk'}") String grouping,
+            @Value("#{jobParameters['id_columns']}") String[] idColumns,
+            @Value("#{jobParameters['grouping_heap_budget'] ?: '256'}") long groupingHeapBudget,
+            @Value("#{jobParameters['grouping_temp_dir']}") String groupingTempDir,
+            @Value("#{jobParameters['blobs'] ?: 'inline'}") String blobs,
+            @Value("#{jobParameters['blob_upload_threads'] ?: '4'}") int blobUploadThreads,
+            @Value("#{jobParameters['watermark_column']}") String watermarkColumn,
+            @Value("#{jobExecutionContext['watermark']}") Object watermark,
+            @Value("#{jobParameters['hash_index_file']}") String hashIndexFile,
+            @Value("#{jobParameters['restartable'] ?: 'false'}") boolean restartable,
+            @Value("#{jobParameters['page_size'] ?: '0'}") int pageSize,
+            @Value("#{jobParameters['page_limit_clause']}") String pageLimitClause,
+            @Value("#{jobParameters['child']}") String child,
+            @Value("#{jobParameters['merger'] ?: 'default'}") String merger,
+            @Value("#{jobParameters['metrics'] ?: 'false'}") boolean metrics,
+            @Value("#{jobParameters['metrics_interval'] ?: '60'}") long metricsInterval,
+            @Value("#{jobParameters['manifest']}") String manifest,
+            @Value("#{jobParameters['jdbc_pool_size'] ?: '0'}") int jdbcPoolSize,
+            @Value("#{jobParameters['jdbc_validation_query']}") String jdbcValidationQuery,
+            @Value("#{jobParameters['jdbc_statement_cache_size'] ?: '0'}") int jdbcStatementCacheSize) {
+
+        Manifest jobManifest = manifest != null ? Manifest.read(new File(manifest)) : null;
+        if (jobManifest != null && (watermarkColumn != null || child != null)) {
+            throw new IllegalArgumentException("watermark_column and child can't be used with a manifest, as they apply to a single query");
+        }
+        if (watermarkColumn != null && child != null) {
+            throw new IllegalArgumentException("watermark_column can't be used with child, as only the parent query " +
+                    "is restricted to new rows, so the children of unchanged parents would be dropped");
+        }
+        if (restartable && !"ordered".equals(grouping)) {
+            throw new IllegalArgumentException("Restartable loads require id_columns and ordered grouping, as rows " +
+                    "are read again after the ID of the last document written");
+        }
+
+        DataSource dataSource = jdbcPoolSize > 0 ?
+                buildPooledDataSource(jdbcPoolSize, jdbcValidationQuery, jdbcStatementCacheSize) : buildDataSource();
+
+        // A single sizer is shared by all partitions so that it adapts to the overall latency of MarkLogic
+        AdaptiveBatchSizer batchSizer = null;
+        if (batchTargetLatency > 0 || batchMaxBytes > 0) {
+            batchSizer = new AdaptiveBatchSizer(batchTargetLatency, batchMaxBytes);
+        }
+        if (chunkSize < 1) {
+            // With adaptive batching, the chunk size is the upper bound on the number of documents in a batch
+            chunkSize = batchSizer != null ? 1000 : 10;
+        }
+        if (batchSizer != null) {
+            batchSizer.setMaxBatchSize(chunkSize);
+        }
+
+        // Without a manifest, the options describe a single job
+        List<ManifestEntry> jobs;
+        if (jobManifest != null) {
+            jobs = jobManifest.getJobsLargestFirst(dataSource);
+        } else {
+            ManifestEntry job = new ManifestEntry();
+            job.setSql(sql);
+            job.setFormat(format);
+            job.setRootLocalName(rootLocalName);
+            job.setCollections(collections);
+            job.setTransformName(transformName);
+            job.setTransformParameters(transformParameters);
+            job.setClientTransform(clientTransform);
+            job.setPartitionColumn(partitionColumn);
+            jobs = Collections.singletonList(job);
+        }
+
+        List<StepExecutionListener> stepListeners = new ArrayList<>();
+        if (dataSource instanceof MeteredDataSource) {
+            stepListeners.add((MeteredDataSource) dataSource);
+        }
+
+        // Shared by all partitions so that the metrics cover the whole step
+        PipelineMetrics pipelineMetrics = null;
+        if (metrics) {
+            pipelineMetrics = new PipelineMetrics(metricsInterval);
+            stepListeners.add(pipelineMetrics);
+        }
+
+        // Shared by all partitions, as they write to the same set of URIs
+        ContentHashIndex contentHashIndex = hashIndexFile != null ? new ContentHashIndex(new File(hashIndexFile)) : null;
+
+        if (hosts != null && hosts.length > 0 && writeThreads > 0) {
+            logger.warn("Ignoring hosts, as the WriteBatcher used with write_threads already spreads writes across the hosts of the database's forests");
+        }
+        // Documents are written to local files instead of MarkLogic, so only the file sink is used
+        boolean offline = outputDir != null || outputZip != null;
+        if (offline && "stream".equals(blobs)) {
+            throw new IllegalArgumentException("blobs stream can't be used with output_dir or output_zip, as streamed " +
+                    "blobs are written to MarkLogic; use blobs inline to keep blobs in the documents");
+        }
+        for (ManifestEntry job : jobs) {
+            if (offline && !job.getTransformName().isEmpty()) {
+                logger.warn("Ignoring transform_name, as transforms are applied by MarkLogic and documents are being written to files");
+                break;
+            }
+        }
+
+        DeadLetterFile deadLetterFile = null;
+        if (deadLetterFileName != null && !offline) {
+            if (writeThreads > 0) {
+                logger.warn("Ignoring dead_letter_file, as the WriteBatcher used with write_threads writes batches asynchronously");
+            } else {
+                deadLetterFile = new DeadLetterFile(new File(deadLetterFileName));
+            }
+        }
+
+        // Shared by all partitions and jobs so that each set goes to the host with the fewest writes in progress
+        LoadBalancingDocumentBatchWriter loadBalancingWriter = null;
+
+        List<Flow> flows = new ArrayList<>();
+        for (ManifestEntry job : jobs) {
+            String jobStepName = jobManifest != null ? "step1." + job.getName() : "step1";
+            String[] jobIdColumns = job.getIdColumns() != null ? job.getIdColumns() : idColumns;
+            if (restartable && (jobIdColumns == null || jobIdColumns.length == 0)) {
+                throw new IllegalArgumentException("Restartable loads require id_columns and ordered grouping, as rows " +
+                        "are read again after the ID of the last document written");
+            }
+
+            Map<String, RowQuery> queries = new LinkedHashMap<>();
+            Map<String, ExecutionContext> partitionContexts = new HashMap<>();
+            ColumnPartitioner partitioner = null;
+            if (job.getPartitionColumn().isEmpty()) {
+                queries.put(jobStepName, new RowQuery(job.getSql()));
+            } else {
+                partitioner = new ColumnPartitioner(dataSource, job.getSql(), job.getPartitionColumn());
+                partitioner.setHashFunction(partitionHashFunction);
+                for (Map.Entry<String, ExecutionContext> partition : partitioner.partition(partitions).entrySet()) {
+                    String stepName = jobStepName + "." + partition.getKey();
+                    queries.put(stepName, partitioner.applyTo(partition.getValue(), new RowQuery(job.getSql())));
+                    partitionContexts.put(stepName, partition.getValue());
+                }
+            }
+
+            // With child queries or paging, the key columns of every query are needed for ordering the rows
+            Map<String, String> childSqls = parseChildQueries(getChildQueries(child));
+            String[] parentKeyColumns = null;
+            Map<String, String[]> childKeyColumns = new LinkedHashMap<>();
+            if (!childSqls.isEmpty() || pageSize > 0) {
+                parentKeyColumns = jobIdColumns != null && jobIdColumns.length > 0 ? jobIdColumns :
+                        new String[]{new RowQuery(job.getSql()).queryColumnLabels(dataSource)[0]};
+            }
+            // Each child query is partitioned on its key column that matches the parent's partition column
+            int partitionKeyIndex = -1;
+            if (partitioner != null && !childSqls.isEmpty()) {
+                for (int i = 0; i < parentKeyColumns.length; i++) {
+                    if (parentKeyColumns[i].equalsIgnoreCase(job.getPartitionColumn())) {
+                        partitionKeyIndex = i;
+                    }
+                }
+                if (partitionKeyIndex < 0) {
+                    throw new IllegalArgumentException("With child queries, partition_column must be one of the ID " +
+                            "columns " + Arrays.toString(parentKeyColumns) + ", so that child rows are read by the " +
+                            "same partition as their parent");
+                }
+            }
+            if (!childSqls.isEmpty()) {
+                for (Map.Entry<String, String> entry : childSqls.entrySet()) {
+                    String[] labels = new RowQuery(entry.getValue()).queryColumnLabels(dataSource);
+                    childKeyColumns.put(entry.getKey(), Arrays.copyOf(labels, parentKeyColumns.length));
+                }
+            }
+            if (watermarkColumn != null && watermark != null) {
+                for (RowQuery query : queries.values()) {
+                    query.where(watermarkColumn + " > ?", watermark);
+                }
+            }
 
-        DataSource dataSource = buildDataSource();
+            // Shared by all partitions so that the number of concurrent uploads is bounded for the whole job
+            BlobUploader blobUploader = null;
+            if ("stream".equals(blobs)) {
+                blobUploader = new BlobUploader(databaseClientProvider.getDatabaseClient().newBinaryDocumentManager(),
+                        "/" + job.getRootLocalName() + "/blobs/", blobUploadThreads);
+                blobUploader.setMetadata(buildMetadata(job.getRootLocalName(), job.getCollections()));
+                stepListeners.add(blobUploader);
+            }
 
-        JdbcCursorItemReader<Map<String, Object>> reader = new JdbcCursorItemReader<>();
+            String[] keyColumns = restartable ? jobIdColumns : null;
+            for (Map.Entry<String, RowQuery> entry : queries.entrySet()) {
+                String stepName = entry.getKey();
+                ColumnMapTransformer columnMapTransformer = null;
+                if (job.getClientTransform() != null && !job.getClientTransform().isEmpty()) {
+                    columnMapTransformer = buildColumnMapTransformer(job.getClientTransform(),
+                            parseParameters("envelope_properties", envelopeProperties), envelopeAttachSource);
+                }
+                ColumnMapItemWriter writer = buildWriter(databaseClientProvider, job.getFormat(), job.getRootLocalName(),
+                        job.getCollections(), job.getTransformName(), job.getTransformParameters(),
+                        buildSerializer(job.getFormat(), jsonWrapRoot, jsonBlobs), columnMapTransformer);
+                writer.setBatchSizer(batchSizer);
+                writer.setIdColumnNames(jobIdColumns);
+                writer.setWatermarkColumnName(watermarkColumn);
+                writer.setContentHashIndex(contentHashIndex);
+                writer.setSaveState(restartable);
+                writer.setPipelineMetrics(pipelineMetrics);
+                if ("structural".equals(merger)) {
+                    writer.setColumnMapMerger(new StructuralColumnMapMerger());
+                }
+                if ("ordered".equals(grouping)) {
+                    writer.setColumnMapGrouper(new OrderedColumnMapGrouper());
+                } else if ("external".equals(grouping)) {
+                    File tempDir = groupingTempDir != null ? new File(groupingTempDir) : null;
+                    writer.setColumnMapGrouper(new SpillingColumnMapGrouper(groupingHeapBudget * 1024 * 1024, tempDir));
+                }
+                DocumentBatchWriter hostsWriter = null;
+                if (outputDir != null) {
+                    writer.setDocumentBatchWriter(new DirectoryDocumentBatchWriter(new File(outputDir)));
+                } else if (outputZip != null) {
+                    writer.setDocumentBatchWriter(new ZipDocumentBatchWriter(new File(outputZip), stepName, outputZipSize * 1024 * 1024));
+                } else if (writeThreads > 0) {
+                    writer.setDocumentBatchWriter(new WriteBatcherDocumentBatchWriter(
+                            databaseClientProvider.getDatabaseClient(), writeBatchSize, writeThreads, writer.getServerTransform()));
+                } else if (hosts != null && hosts.length > 0) {
+                    if (loadBalancingWriter == null) {
+                        loadBalancingWriter = new LoadBalancingDocumentBatchWriter(buildDatabaseClients(hosts), null);
+                    }
+                    hostsWriter = loadBalancingWriter.withTransform(writer.getServerTransform());
+                    writer.setDocumentBatchWriter(hostsWriter);
+                }
+                if (deadLetterFile != null) {
+                    DocumentBatchWriter documentBatchWriter = hostsWriter != null ? hostsWriter :
+                            new DocumentManagerBatchWriter(writer.getDocumentManager(), writer.getServerTransform());
+                    RetryingDocumentBatchWriter retryingWriter = new RetryingDocumentBatchWriter(
+                            documentBatchWriter, writer.getDocumentManager(), deadLetterFile);
+                    retryingWriter.setMaxRetries(writeRetries);
+                    retryingWriter.setInitialBackoff(writeRetryBackoff);
+                    retryingWriter.setFailedDocumentHandler(writer);
+                    writer.setDocumentBatchWriter(retryingWriter);
+                }
+                ItemStreamReader<Map<String, Object>> reader;
+                if (childSqls.isEmpty()) {
+                    reader = buildReader(dataSource, entry.getValue(), blobUploader, keyColumns,
+                            pageSize, parentKeyColumns, pageLimitClause);
+                } else {
+                    entry.getValue().orderBy(StringUtils.arrayToCommaDelimitedString(parentKeyColumns));
+                    MergeJoinItemReader mergeJoinReader = new MergeJoinItemReader(
+                            buildReader(dataSource, entry.getValue(), blobUploader, keyColumns,
+                                    pageSize, parentKeyColumns, pageLimitClause), parentKeyColumns);
+                    for (Map.Entry<String, String> childSql : childSqls.entrySet()) {
+                        String[] childKeys = childKeyColumns.get(childSql.getKey());
+                        RowQuery childQuery = new RowQuery(childSql.getValue());
+                        if (partitioner != null) {
+                            partitioner.applyTo(partitionContexts.get(stepName), childQuery, childKeys[partitionKeyIndex]);
+                        }
+                        childQuery.orderBy(StringUtils.arrayToCommaDelimitedString(childKeys));
+                        AbstractItemCountingItemStreamItemReader<Map<String, Object>> childReader = buildReader(dataSource,
+                                childQuery, blobUploader, restartable ? childKeys : null, pageSize, childKeys, pageLimitClause);
+                        childReader.setSaveState(false);
+                        mergeJoinReader.addChild(childSql.getKey(), childReader, childKeys);
+                    }
+                    reader = mergeJoinReader;
+                }
+                if (partitioner == null && jobManifest == null) {
+                    return buildStep(stepBuilderFactory, stepName, chunkSize, reader, writer, stepListeners, pipelineMetrics);
+                }
+                Step step = buildStep(stepBuilderFactory, stepName, chunkSize, reader, writer,
+                        new ArrayList<StepExecutionListener>(), pipelineMetrics);
+                flows.add(new FlowBuilder<Flow>(stepName).start(step).build());
+            }
+        }
+
+        // Flows are started in order as threads become available, so with a manifest, the largest jobs start first
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("rowToDoc-");
+        taskExecutor.setConcurrencyLimit(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        Flow splitFlow = new FlowBuilder<Flow>("step1.partitions")
+                .split(taskExecutor)
+                .add(flows.toArray(new Flow[flows.size()]))
+                .build();
+        StepBuilder stepBuilder = stepBuilderFactory.get("step1");
+        for (StepExecutionListener listener : stepListeners) {
+            stepBuilder.listener(listener);
+        }
+        return stepBuilder.flow(splitFlow).build();
+    }
+
+    /**
+     * Each reader/writer pair is given its own step, so that partitions can be processed concurrently.
+     *
+     * @param pipelineMetrics optional; if not null, it times the reading and processing of each row. It's registered
+     *                        only as a read and process listener, as with partitions, it's a listener of the outer step.
+     */
+    protected Step buildStep(StepBuilderFactory stepBuilderFactory, String stepName, int chunkSize,
+                             ItemReader<Map<String, Object>> reader, ColumnMapItemWriter writer,
+                             List<StepExecutionListener> listeners, PipelineMetrics pipelineMetrics) {
+        SimpleStepBuilder<Map<String, Object>, Map<String, Object>> builder = stepBuilderFactory.get(stepName)
+                .<Map<String, Object>, Map<String, Object>>chunk(chunkSize)
+                .reader(reader)
+                .processor(new PathAwareColumnMapProcessor())
+                .writer(writer);
+        for (StepExecutionListener listener : listeners) {
+            builder.listener(listener);
+        }
+        if (pipelineMetrics != null) {
+            builder.listener((ItemReadListener<Object>) pipelineMetrics);
+            builder.listener((ItemProcessListener<Object, Object>) pipelineMetrics);
+        }
+        // Registered last so that its afterStep, which writes the remaining groups, runs before the other listeners'
+        builder.listener((StepExecutionListener) writer);
+        return builder.build();
+    }
+
+    /**
+     * Parses child queries of the form "name=SQL", one per --child option. The SQL is never split, so it may contain
+     * semicolons, e.g. in a string literal.
+     */
+    protected Map<String, String> parseChildQueries(List<String> children) {
+        Map<String, String> childSqls = new LinkedHashMap<>();
+        for (String token : children) {
+            if (token.trim().isEmpty()) {
+                continue;
+            }
+            int pos = token.indexOf('=');
+            if (pos < 1) {
+                throw new IllegalArgumentException("Child queries must be of the form name=SQL: " + token);
+            }
+            childSqls.put(token.substring(0, pos).trim(), token.substring(pos + 1).trim());
+        }
+        return childSqls;
+    }
+
+    /**
+     * --child may be repeated, so its values are read from the command line property source, which keeps each of them;
+     * if it's not there, the job parameter is a single child query.
+     */
+    protected List<String> getChildQueries(String child) {
+        if (env instanceof ConfigurableEnvironment) {
+            for (PropertySource<?> source : ((ConfigurableEnvironment) env).getPropertySources()) {
+                if (source instanceof CommandLinePropertySource) {
+                    List<String> values = ((CommandLinePropertySource<?>) source).getOptionValues("child");
+                    if (values != null && !values.isEmpty()) {
+                        return values;
+                    }
+                }
+            }
+        }
+        return child != null ? Collections.singletonList(child) : Collections.<String>emptyList();
+    }
+
+    /**
+     * @param blobUploader    optional; if not null, binary columns are streamed to it instead of being read into memory
+     * @param keyColumns      optional; if not null, the query is ordered by these columns, and a restarted step resumes
+     *                        after the last key written
+     * @param pageSize        if greater than 0, the query is read in pages of this many rows instead of with a cursor
+     * @param pageKeyColumns  with paging, the columns that the query is paged on; must be the key columns if those are
+     *                        set
+     * @param pageLimitClause optional; with paging, the clause that limits the rows in each page
+     */
+    protected AbstractItemCountingItemStreamItemReader<Map<String, Object>> buildReader(DataSource dataSource, RowQuery query,
+                                                                                       BlobUploader blobUploader, String[] keyColumns,
+                                                                                       int pageSize, String[] pageKeyColumns,
+                                                                                       String pageLimitClause) {
+        RowMapper<Map<String, Object>> rowMapper = blobUploader != null ?
+                new BlobStreamingRowMapper(blobUploader) : new CompiledColumnMapRowMapper();
+        if (pageSize > 0) {
+            KeysetPagingItemReader reader = new KeysetPagingItemReader(dataSource, query,
+                    keyColumns != null ? keyColumns : pageKeyColumns, pageSize);
+            if (pageLimitClause != null) {
+                reader.setLimitClause(pageLimitClause);
+            }
+            reader.setRowMapper(rowMapper);
+            return reader;
+        }
+
+        JdbcCursorItemReader<Map<String, Object>> reader;
+        if (keyColumns != null) {
+            query.orderBy(StringUtils.arrayToCommaDelimitedString(keyColumns));
+            reader = new CheckpointedCursorItemReader(query, keyColumns);
+        } else {
+            reader = new JdbcCursorItemReader<>();
+            reader.setSql(query.getSql());
+            reader.setPreparedStatementSetter(query.newPreparedStatementSetter());
+        }
         reader.setDataSource(dataSource);
-        reader.setRowMapper(new ColumnMapRowMapper());
-        reader.setSql(sql);
+        reader.setRowMapper(rowMapper);
+        return reader;
+    }
 
-        ColumnMapItemWriter writer = new ColumnMapItemWriter(databaseClientProvider.getDatabaseClient(), rootLocalName);
+    /**
+     * Creates a client for each host, with the same settings as the default client - marklogic.port,
+     * marklogic.username, marklogic.password and marklogic.auth in job.properties - unless they're overridden by the
+     * port, username, password and auth options. Authentication defaults to DIGEST.
+     */
+    protected Map<String, DatabaseClient> buildDatabaseClients(String[] hosts) {
+        int port;
+        String portValue = getClientProperty("port", true);
+        try {
+            port = Integer.parseInt(portValue.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid MarkLogic port for hosts: " + portValue);
+        }
+        String username = getClientProperty("username", true);
+        String password = getClientProperty("password", true);
+        String database = getClientProperty("database", false);
+        String auth = getClientProperty("auth", false);
+        DatabaseClientFactory.Authentication authentication = auth != null ?
+                DatabaseClientFactory.Authentication.valueOfUncased(auth.trim()) : DatabaseClientFactory.Authentication.DIGEST;
+
+        Map<String, DatabaseClient> clients = new LinkedHashMap<>();
+        for (String host : hosts) {
+            host = host.trim();
+            if (!host.isEmpty() && !clients.containsKey(host)) {
+                clients.put(host, database != null ?
+                        DatabaseClientFactory.newClient(host, port, database, username, password, authentication) :
+                        DatabaseClientFactory.newClient(host, port, username, password, authentication));
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * @return the value of the option with the given name, or else of the marklogic.* property in job.properties
+     */
+    protected String getClientProperty(String name, boolean required) {
+        String value = env.getProperty(name);
+        if (value == null) {
+            value = env.getProperty("marklogic." + name);
+        }
+        if (value == null && required) {
+            throw new IllegalArgumentException("hosts requires the MarkLogic " + name + "; set it with --" + name +
+                    " or marklogic." + name + " in job.properties");
+        }
+        return value;
+    }
+
+    /**
+     * Documents - and the binary documents of streamed blobs - are added to the collections, which default to the root
+     * local name.
+     */
+    protected DocumentMetadataHandle buildMetadata(String rootLocalName, String[] collections) {
         DocumentMetadataHandle metadata = new DocumentMetadataHandle();
         if (collections == null || collections.length == 0) {
             String[] coll = {rootLocalName};
@@ -82,28 +624,93 @@ public class RowToDoc implements OptionParserConfigurer {
         } else {
             metadata.withCollections(collections);
         }
-        if ("json".equals(format)) {
-            writer.setColumnMapSerializer(new JsonColumnMapSerializer());
+        return metadata;
+    }
+
+    /**
+     * @param columnMapTransformer optional; if not null, each column map is transformed before it's serialized
+     */
+    protected ColumnMapItemWriter buildWriter(DatabaseClientProvider databaseClientProvider, String format,
+                                              String rootLocalName, String[] collections,
+                                              String transformName, String transformParameters,
+                                              ColumnMapSerializer serializer, ColumnMapTransformer columnMapTransformer) {
+        ColumnMapItemWriter writer = new ColumnMapItemWriter(databaseClientProvider.getDatabaseClient(), rootLocalName);
+        DocumentMetadataHandle metadata = buildMetadata(rootLocalName, collections);
+        Map<String, String> paramsMap = parseParameters("transform_parameters", transformParameters);
+        if (columnMapTransformer != null) {
+            writer.setColumnMapTransformer(columnMapTransformer);
+            if (serializer instanceof JsonColumnMapSerializer) {
+                // The transformed document has a root of its own, e.g. the envelope
+                ((JsonColumnMapSerializer) serializer).setWrapInRoot(true);
+            }
         }
+        writer.setColumnMapSerializer(serializer);
         if (!transformName.isEmpty()) {
-            Map<String, String> paramsMap = new HashMap<String, String>();
-            if (!transformParameters.isEmpty()) {
-                String params[] = transformParameters.split(",");
-                for (int i = 0; i < params.length; i += 2) {
-                    paramsMap.put(params[i], params[i + 1]);
-                }
-            }
-
             writer.setTransform(Format.valueOf(format.toUpperCase()), transformName, paramsMap);
         }
         writer.setMetadata(metadata);
+        return writer;
+    }
 
-        return stepBuilderFactory.get("step1")
-                .<Map<String, Object>, Map<String, Object>>chunk(10)
-                .reader(reader)
-                .processor(new PathAwareColumnMapProcessor())
-                .writer(writer)
-                .build();
+    /**
+     * Parses parameters of the form "name1,value1,name2,value2", e.g. transform_parameters. Whitespace around names
+     * and values is ignored, and a name without a value is rejected.
+     *
+     * @param option the name of the option the parameters are from, for error messages
+     */
+    protected Map<String, String> parseParameters(String option, String parameters) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (parameters == null || parameters.trim().isEmpty()) {
+            return params;
+        }
+        String[] tokens = parameters.split(",", -1);
+        if (tokens.length % 2 != 0) {
+            throw new IllegalArgumentException(option + " must be a comma-separated list of names and " +
+                    "values, e.g. name1,value1,name2,value2; found: " + parameters);
+        }
+        for (int i = 0; i < tokens.length; i += 2) {
+            String name = tokens[i].trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty parameter name in " + option + ": " + parameters);
+            }
+            params.put(name, tokens[i + 1].trim());
+        }
+        return params;
+    }
+
+    /**
+     * @param clientTransform    either envelope, or the name of a class that implements ColumnMapTransformer
+     * @param instanceProperties for envelope, added as properties of the instance
+     * @param attachSource       for envelope, whether the document is also added to the attachments
+     */
+    protected ColumnMapTransformer buildColumnMapTransformer(String clientTransform, Map<String, String> instanceProperties,
+                                                             boolean attachSource) {
+        if ("envelope".equals(clientTransform)) {
+            EnvelopeColumnMapTransformer transformer = new EnvelopeColumnMapTransformer();
+            transformer.setInstanceProperties(instanceProperties);
+            transformer.setAttachSource(attachSource);
+            return transformer;
+        }
+        Class<?> transformerClass = ClassUtils.resolveClassName(clientTransform, getClass().getClassLoader());
+        return BeanUtils.instantiateClass(transformerClass, ColumnMapTransformer.class);
+    }
+
+    /**
+     * Each writer needs its own serializer, as the serializers are not thread-safe.
+     *
+     * @param jsonWrapRoot for json, whether each document is wrapped in an object keyed by the root local name
+     * @param jsonBlobs    for json, either base64 or skip
+     */
+    protected ColumnMapSerializer buildSerializer(String format, boolean jsonWrapRoot, String jsonBlobs) {
+        if ("json".equals(format)) {
+            JsonColumnMapSerializer serializer = new JsonColumnMapSerializer();
+            serializer.setWrapInRoot(jsonWrapRoot);
+            if ("skip".equals(jsonBlobs)) {
+                serializer.setBlobMode(JsonColumnMapSerializer.BlobMode.SKIP);
+            }
+            return serializer;
+        }
+        return new DefaultStaxColumnMapSerializer();
     }
 
     /**
@@ -119,4 +726,31 @@ public class RowToDoc implements OptionParserConfigurer {
         return ds;
     }
 
+    /**
+     * Builds a DBCP pool so that connections are reused across steps and partitions, wrapped so that the time spent
+     * waiting for a connection is reported. The pool is closed when the step finishes.
+     *
+     * @param validationQuery    optional; if not null, each connection is validated with it before it's used
+     * @param statementCacheSize if greater than 0, the number of prepared statements cached per connection
+     */
+    protected MeteredDataSource buildPooledDataSource(int poolSize, String validationQuery, int statementCacheSize) {
+        logger.info("Creating pooled data source with maximum size: " + poolSize);
+        BasicDataSource ds = new BasicDataSource();
+        ds.setDriverClassName(env.getProperty(Options.JDBC_DRIVER));
+        ds.setUrl(env.getProperty(Options.JDBC_URL));
+        ds.setUsername(env.getProperty(Options.JDBC_USERNAME));
+        ds.setPassword(env.getProperty(Options.JDBC_PASSWORD));
+        ds.setMaxTotal(poolSize);
+        ds.setMaxIdle(poolSize);
+        if (validationQuery != null) {
+            ds.setValidationQuery(validationQuery);
+            ds.setTestOnBorrow(true);
+        }
+        if (statementCacheSize > 0) {
+            ds.setPoolPreparedStatements(true);
+            ds.setMaxOpenPreparedStatements(statementCacheSize);
+        }
+        return new MeteredDataSource(ds);
+    }
+
 }
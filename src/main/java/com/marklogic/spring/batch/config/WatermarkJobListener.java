@@ -0,0 +1,114 @@
+package com.marklogic.spring.batch.config;
+
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import com.marklogic.spring.batch.item.KeyComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Carries the watermark of an incremental load from one run to the next. Before the job runs, the watermark of the
+ * most recent completed run with the same SQL and watermark column is put into the job ExecutionContext, where the step
+ * can bind it into the query. After a job completes, the highest watermark stored by any of its steps - or the previous
+ * watermark, if no rows were read - is saved in the job ExecutionContext for the next run.
+ * <p>
+ * A watermark is only carried over from a completed run, as a failed run may have read rows that were never written.
+ * Watermarks only survive across processes when the job repository is persistent.
+ */
+public class WatermarkJobListener implements JobExecutionListener {
+
+    public static final String WATERMARK_KEY = "watermark";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private JobExplorer jobExplorer;
+    private JobRepository jobRepository;
+    private Comparator<Object> comparator = new KeyComparator();
+    private int maxJobInstances = 100;
+
+    public WatermarkJobListener(JobExplorer jobExplorer, JobRepository jobRepository) {
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        if (getWatermarkColumn(jobExecution) == null) {
+            return;
+        }
+        Object watermark = findPreviousWatermark(jobExecution);
+        if (watermark != null) {
+            logger.info("Selecting rows with " + getWatermarkColumn(jobExecution) + " greater than: " + watermark);
+            jobExecution.getExecutionContext().put(WATERMARK_KEY, watermark);
+        } else {
+            logger.info("No previous watermark found, so selecting all rows");
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (getWatermarkColumn(jobExecution) == null || jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            return;
+        }
+        Object watermark = jobExecution.getExecutionContext().get(WATERMARK_KEY);
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            Object stepWatermark = stepExecution.getExecutionContext().get(ColumnMapItemWriter.WATERMARK_KEY);
+            if (stepWatermark != null && (watermark == null || comparator.compare(stepWatermark, watermark) > 0)) {
+                watermark = stepWatermark;
+            }
+        }
+        if (watermark != null) {
+            logger.info("Saving watermark for the next run: " + watermark);
+            jobExecution.getExecutionContext().put(WATERMARK_KEY, watermark);
+            jobRepository.updateExecutionContext(jobExecution);
+        }
+    }
+
+    /**
+     * Job instances are returned most recent first, so the first completed execution with a watermark wins.
+     */
+    protected Object findPreviousWatermark(JobExecution jobExecution) {
+        String jobName = jobExecution.getJobInstance().getJobName();
+        for (JobInstance jobInstance : jobExplorer.getJobInstances(jobName, 0, maxJobInstances)) {
+            List<JobExecution> executions = jobExplorer.getJobExecutions(jobInstance);
+            for (JobExecution previous : executions) {
+                if (previous.getId().equals(jobExecution.getId()) || previous.getStatus() != BatchStatus.COMPLETED) {
+                    continue;
+                }
+                if (isSameQuery(jobExecution, previous) && previous.getExecutionContext().containsKey(WATERMARK_KEY)) {
+                    return previous.getExecutionContext().get(WATERMARK_KEY);
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isSameQuery(JobExecution current, JobExecution previous) {
+        return equals(current.getJobParameters().getString("sql"), previous.getJobParameters().getString("sql"))
+                && equals(getWatermarkColumn(current), getWatermarkColumn(previous));
+    }
+
+    private boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    private String getWatermarkColumn(JobExecution jobExecution) {
+        return jobExecution.getJobParameters().getString("watermark_column");
+    }
+
+    /**
+     * The number of most recent job instances searched for a previous watermark; defaults to 100.
+     */
+    public void setMaxJobInstances(int maxJobInstances) {
+        this.maxJobInstances = maxJobInstances;
+    }
+}
@@ -0,0 +1,86 @@
+package com.marklogic.spring.batch.item;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.client.io.BytesHandle;
+import com.marklogic.client.io.DocumentMetadataHandle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Support for DocumentBatchWriter implementations that write documents to local files instead of MarkLogic, so that
+ * rows can be extracted at the speed of the source database and loaded later. Each document is written under a path
+ * based on its URI, and its collections and quality are written to a sidecar named (path).metadata.json. As every
+ * document written by a ColumnMapItemWriter shares the same metadata, the sidecar content is only serialized once per
+ * metadata handle.
+ */
+public abstract class AbstractFileDocumentBatchWriter extends LoggingObject implements DocumentBatchWriter {
+
+    public static final String METADATA_SUFFIX = ".metadata.json";
+
+    private JsonFactory jsonFactory = new JsonFactory();
+    private Object lastMetadata;
+    private byte[] lastMetadataBytes;
+
+    protected long documentCount;
+    protected long byteCount;
+
+    /**
+     * @return the URI without leading slashes, so it can be resolved against a directory or used as a zip entry name
+     */
+    protected String toRelativePath(String uri) {
+        int start = 0;
+        while (start < uri.length() && uri.charAt(start) == '/') {
+            start++;
+        }
+        String path = uri.substring(start);
+        if (path.isEmpty() || path.equals("..") || path.startsWith("../") || path.contains("/../") || path.endsWith("/..")) {
+            throw new IllegalArgumentException("Unable to write document with URI " + uri + " to a file");
+        }
+        return path;
+    }
+
+    protected byte[] getContent(DocumentWriteOperation op) {
+        Object content = op.getContent();
+        if (content instanceof BytesHandle) {
+            return ((BytesHandle) content).get();
+        }
+        throw new IllegalArgumentException("Unsupported content handle for URI " + op.getUri() + ": " + content.getClass().getName());
+    }
+
+    /**
+     * @return the sidecar content for the operation's metadata, or null if the operation has no metadata
+     */
+    protected byte[] getMetadataSidecar(DocumentWriteOperation op) throws IOException {
+        Object metadata = op.getMetadata();
+        if (!(metadata instanceof DocumentMetadataHandle)) {
+            return null;
+        }
+        if (metadata != lastMetadata) {
+            DocumentMetadataHandle handle = (DocumentMetadataHandle) metadata;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonGenerator gen = jsonFactory.createGenerator(out);
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("collections");
+            for (String collection : handle.getCollections()) {
+                gen.writeString(collection);
+            }
+            gen.writeEndArray();
+            gen.writeNumberField("quality", handle.getQuality());
+            gen.writeEndObject();
+            gen.close();
+            lastMetadata = metadata;
+            lastMetadataBytes = out.toByteArray();
+        }
+        return lastMetadataBytes;
+    }
+
+    protected void logSummary(String destination) {
+        if (logger.isInfoEnabled()) {
+            logger.info("Wrote " + documentCount + " documents (" + byteCount + " bytes) to " + destination);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.helper.LoggingObject;
+
+/**
+ * Determines how many documents ColumnMapItemWriter should put in a single DocumentWriteSet, based on how long
+ * previous sets took to write and how large they were. The batch size moves towards the number of documents that can
+ * be written in the target latency, and is capped so that a batch doesn't exceed the byte budget. Changes are damped
+ * by averaging the old and new sizes, and a batch can at most double in size between two writes.
+ * <p>
+ * A single instance can be shared by multiple writers - e.g. one per partition - in which case it adapts to the
+ * overall latency that MarkLogic is exhibiting.
+ */
+public class AdaptiveBatchSizer extends LoggingObject {
+
+    private int minBatchSize = 1;
+    private int maxBatchSize = 1000;
+    private long targetLatency;
+    private long maxBatchBytes;
+
+    private volatile int batchSize = 10;
+
+    /**
+     * @param targetLatency the target time in milliseconds for writing a batch; 0 to ignore latency
+     * @param maxBatchBytes the maximum number of bytes in a batch; 0 for no limit
+     */
+    public AdaptiveBatchSizer(long targetLatency, long maxBatchBytes) {
+        this.targetLatency = targetLatency;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * @param documentCount the number of documents that were written
+     * @param bytes         the total size of the documents that were written
+     * @param elapsed       the time in milliseconds that it took to write the documents
+     */
+    public synchronized void recordBatch(int documentCount, long bytes, long elapsed) {
+        if (documentCount < 1) {
+            return;
+        }
+        int newSize = batchSize;
+        if (targetLatency > 0) {
+            double millisPerDocument = Math.max(elapsed, 1) / (double) documentCount;
+            newSize = (int) Math.min(targetLatency / millisPerDocument, batchSize * 2L);
+        } else if (documentCount >= batchSize) {
+            newSize = batchSize * 2;
+        }
+        newSize = (batchSize + newSize) / 2;
+        // The byte cap is applied after damping, so that a shrinking batch is immediately within the budget
+        if (maxBatchBytes > 0 && bytes > 0) {
+            long bytesPerDocument = Math.max(bytes / documentCount, 1);
+            newSize = (int) Math.min(newSize, maxBatchBytes / bytesPerDocument);
+        }
+        newSize = Math.max(minBatchSize, Math.min(maxBatchSize, newSize));
+        if (newSize != batchSize && logger.isDebugEnabled()) {
+            logger.debug("Changing batch size from " + batchSize + " to " + newSize + "; last batch had "
+                    + documentCount + " documents and " + bytes + " bytes and took " + elapsed + "ms");
+        }
+        batchSize = newSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setInitialBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = minBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of documents in a batch; defaults to 1000. The current batch size is
+     *                     lowered to it if necessary.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        this.batchSize = Math.min(batchSize, maxBatchSize);
+    }
+}
@@ -0,0 +1,203 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.document.BinaryDocumentManager;
+import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.client.io.DocumentMetadataHandle;
+import com.marklogic.client.io.FileHandle;
+import com.marklogic.client.io.Format;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the content of blob columns as binary documents, so that blobs never have to be held in memory. A blob is
+ * streamed to a temporary file, and the file is then written to MarkLogic on a separate thread while the step keeps
+ * reading rows. The URI of a binary document is based on a SHA-1 digest of its content, so the same blob is always
+ * written to the same URI regardless of how rows are grouped into documents.
+ * <p>
+ * The number of uploads in flight is bounded; when the limit is reached, upload blocks until an upload finishes, which
+ * also bounds the number of temporary files. As a StepExecutionListener, this waits for every upload to finish when the
+ * step finishes, and fails the step if any upload failed - setting its status as well as its exit status, so that the
+ * job is failed and can be restarted rather than leaving documents that refer to missing blobs. A single instance can
+ * be shared by every partition of a step.
+ */
+public class BlobUploader extends LoggingObject implements StepExecutionListener {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private BinaryDocumentManager binaryDocumentManager;
+    private String uriPrefix;
+    private int maxConcurrentUploads;
+    private File tempDir;
+    private DocumentMetadataHandle metadata;
+
+    private ExecutorService executorService;
+    private Semaphore uploadPermits;
+    private Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private AtomicLong uploadCount = new AtomicLong();
+    private AtomicLong byteCount = new AtomicLong();
+
+    /**
+     * @param binaryDocumentManager
+     * @param uriPrefix             prepended to the hex digest of each blob to form its URI
+     * @param maxConcurrentUploads  maximum number of blobs being written to MarkLogic at once
+     */
+    public BlobUploader(BinaryDocumentManager binaryDocumentManager, String uriPrefix, int maxConcurrentUploads) {
+        this.binaryDocumentManager = binaryDocumentManager;
+        this.uriPrefix = uriPrefix;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        executorService = Executors.newFixedThreadPool(maxConcurrentUploads);
+        uploadPermits = new Semaphore(maxConcurrentUploads);
+        failures.clear();
+    }
+
+    /**
+     * Streams the blob to a temporary file and schedules the file to be written to MarkLogic. The stream is not
+     * closed.
+     *
+     * @return the URI that the blob will be written to
+     */
+    public String upload(InputStream in) throws IOException {
+        throwIfFailed();
+        File file = File.createTempFile("rowToDoc-blob-", ".bin", tempDir);
+        MessageDigest digest = newDigest();
+        long length = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536)) {
+            byte[] buffer = new byte[65536];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+                out.write(buffer, 0, count);
+                length += count;
+            }
+        } catch (IOException | RuntimeException ex) {
+            deleteFile(file);
+            throw ex;
+        }
+
+        final String uri = uriPrefix + toHex(digest.digest()) + ".bin";
+        final File content = file;
+        final long contentLength = length;
+        try {
+            uploadPermits.acquire();
+        } catch (InterruptedException ex) {
+            deleteFile(file);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to upload blob to: " + uri, ex);
+        }
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeBlob(uri, content);
+                    uploadCount.incrementAndGet();
+                    byteCount.addAndGet(contentLength);
+                } catch (Throwable t) {
+                    logger.error("Unable to write blob to " + uri + ": " + t.getMessage());
+                    failures.add(t);
+                } finally {
+                    deleteFile(content);
+                    uploadPermits.release();
+                }
+            }
+        });
+        return uri;
+    }
+
+    /**
+     * Protected so that a subclass can write blobs somewhere else.
+     */
+    protected void writeBlob(String uri, File file) {
+        binaryDocumentManager.write(uri, metadata, new FileHandle(file).withFormat(Format.BINARY));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        executorService.shutdown();
+        try {
+            while (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                if (logger.isInfoEnabled()) {
+                    logger.info("Waiting for blob uploads to finish");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            executorService.shutdownNow();
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Blobs uploaded: " + uploadCount.get() + "; bytes: " + byteCount.get());
+        }
+        if (!failures.isEmpty()) {
+            logger.error("Failed blob uploads: " + failures.size());
+            stepExecution.setStatus(BatchStatus.FAILED);
+            for (Throwable failure : failures) {
+                stepExecution.addFailureException(failure);
+            }
+            return ExitStatus.FAILED;
+        }
+        return null;
+    }
+
+    protected void throwIfFailed() {
+        Throwable failure = failures.peek();
+        if (failure != null) {
+            throw new RuntimeException("Unable to upload blob: " + failure.getMessage(), failure);
+        }
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private void deleteFile(File file) {
+        if (!file.delete()) {
+            logger.warn("Unable to delete temporary file: " + file.getAbsolutePath());
+        }
+    }
+
+    public long getUploadCount() {
+        return uploadCount.get();
+    }
+
+    public void setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public void setMetadata(DocumentMetadataHandle metadata) {
+        this.metadata = metadata;
+    }
+}
@@ -0,0 +1,64 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.spring.batch.columnmap.ColumnMapMerger;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Default implementation, which doesn't require the rows to be ordered by ID, but does require all the rows for an ID
+ * to arrive in the same or consecutive chunks. At the end of each chunk, every group whose ID did not appear in that
+ * chunk is considered complete.
+ */
+public class ChunkColumnMapGrouper implements ColumnMapGrouper {
+
+    private ColumnMapMerger columnMapMerger;
+    private Map<Object, Map<String, Object>> recordMap = new HashMap<>();
+    private Set<Object> idsInChunk = new HashSet<>();
+
+    @Override
+    public void setColumnMapMerger(ColumnMapMerger columnMapMerger) {
+        this.columnMapMerger = columnMapMerger;
+    }
+
+    @Override
+    public void add(Object id, Map<String, Object> columnMap, GroupHandler handler) {
+        idsInChunk.add(id);
+        Map<String, Object> existingColumnMap = recordMap.get(id);
+        if (existingColumnMap != null && columnMapMerger != null) {
+            columnMapMerger.mergeColumnMaps(existingColumnMap, columnMap);
+        } else {
+            recordMap.put(id, columnMap);
+        }
+    }
+
+    @Override
+    public void endOfChunk(GroupHandler handler) {
+        Iterator<Map.Entry<Object, Map<String, Object>>> iter = recordMap.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Object, Map<String, Object>> entry = iter.next();
+            if (!idsInChunk.contains(entry.getKey())) {
+                handler.handleGroup(entry.getKey(), entry.getValue());
+                iter.remove();
+            }
+        }
+        idsInChunk.clear();
+    }
+
+    @Override
+    public void endOfInput(GroupHandler handler) {
+        for (Map.Entry<Object, Map<String, Object>> entry : recordMap.entrySet()) {
+            handler.handleGroup(entry.getKey(), entry.getValue());
+        }
+        recordMap.clear();
+        idsInChunk.clear();
+    }
+
+    @Override
+    public int getBufferedCount() {
+        return recordMap.size();
+    }
+}
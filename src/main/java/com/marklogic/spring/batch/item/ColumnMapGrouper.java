@@ -0,0 +1,43 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.spring.batch.columnmap.ColumnMapMerger;
+
+import java.util.Map;
+
+/**
+ * Defines how ColumnMapItemWriter groups column maps that have the same ID into a single column map, and when a group
+ * is complete and can be written as a document. Implementations are not expected to be thread-safe; each writer has
+ * its own grouper.
+ */
+public interface ColumnMapGrouper {
+
+    void setColumnMapMerger(ColumnMapMerger columnMapMerger);
+
+    /**
+     * Adds a column map to its group; any groups that are known to be complete as a result are passed to the handler.
+     */
+    void add(Object id, Map<String, Object> columnMap, GroupHandler handler);
+
+    /**
+     * Called after every column map in a chunk has been added.
+     */
+    void endOfChunk(GroupHandler handler);
+
+    /**
+     * Called when there are no more column maps; every group that has not yet been passed to the handler must be
+     * passed to it now.
+     */
+    void endOfInput(GroupHandler handler);
+
+    /**
+     * @return the number of groups that are buffered and not yet complete
+     */
+    int getBufferedCount();
+
+    /**
+     * Receives the column map for each complete group.
+     */
+    interface GroupHandler {
+        void handleGroup(Object id, Map<String, Object> columnMap);
+    }
+}
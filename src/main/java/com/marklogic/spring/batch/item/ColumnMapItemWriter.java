@@ -6,30 +6,51 @@ import com.marklogic.client.document.GenericDocumentManager;
 import com.marklogic.client.document.ServerTransform;
 import com.marklogic.client.io.DocumentMetadataHandle;
 import com.marklogic.client.io.Format;
-import com.marklogic.client.io.StringHandle;
 import com.marklogic.spring.batch.columnmap.ColumnMapMerger;
 import com.marklogic.spring.batch.columnmap.ColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.ColumnMapTransformer;
 import com.marklogic.spring.batch.columnmap.DefaultColumnMapMerger;
 import com.marklogic.spring.batch.columnmap.DefaultStaxColumnMapSerializer;
+import com.marklogic.spring.batch.columnmap.StreamingColumnMapSerializer;
 import com.marklogic.spring.batch.item.AbstractDocumentWriter;
+import com.marklogic.spring.batch.metrics.PipelineMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemStream;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemWriter;
-import sun.net.www.content.text.Generic;
+import org.springframework.util.ReflectionUtils;
 
+import javax.xml.namespace.QName;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.*;
 
 /**
  * Features this can provide:
  * <ol>
- * <li>Assume the first column is the ID column, but provide a property to allow for a column name.</li>
  * <li>Provide a strategy interface for generating XML element names based on column names.</li>
  * </ol>
  */
-public class ColumnMapItemWriter implements ItemWriter<Map<String, Object>>, ItemStream {
+public class ColumnMapItemWriter implements ItemWriter<Map<String, Object>>, ItemStream, StepExecutionListener,
+        RetryingDocumentBatchWriter.FailedDocumentHandler {
+
+    /**
+     * Key in the step ExecutionContext of the highest value of the watermark column written so far.
+     */
+    public static final String WATERMARK_KEY = "watermark";
+
+    /**
+     * Key in the step ExecutionContext of the ID of the last group that was completely written.
+     */
+    public static final String LAST_WRITTEN_KEY = "lastWrittenKey";
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -41,18 +62,50 @@ public class ColumnMapItemWriter implements ItemWriter<Map<String, Object>>, Ite
     private Format format;
     private boolean transformOn = false;
     private DocumentMetadataHandle metadata;
+    private AdaptiveBatchSizer batchSizer;
+    private DocumentBatchWriter documentBatchWriter;
+    private ColumnMapGrouper columnMapGrouper;
+    private String[] idColumnNames;
+    private int maxSetSize = 1000;
+    private String watermarkColumnName;
+    private ContentHashIndex contentHashIndex;
+    private int contentHashApplyInterval = 10000;
+    private boolean saveState = false;
+    private PipelineMetrics pipelineMetrics;
+    private ColumnMapTransformer columnMapTransformer;
+    private QName transformedRootName;
 
     public void setMetadata(DocumentMetadataHandle metadata) {
         this.metadata = metadata;
     }
 
-
-
-
-
     // Internal state
     private GenericDocumentManager mgr;
-    private Map<Object, Map<String, Object>> recordMap = new HashMap<>();
+    private String[] idKeys;
+    private String watermarkKey;
+    private Object watermark;
+    private Object pendingWatermark;
+    private Comparator<Object> watermarkComparator = new KeyComparator();
+    private ContentHashIndex.Updates contentHashUpdates;
+    private long unchangedCount;
+    private Object lastWrittenKey;
+    private int lastBufferedCount;
+    private boolean finished;
+    private boolean finishFailed;
+    private boolean legacyUriGenerator;
+    private DocumentWriteSet currentSet;
+    private long currentSetBytes;
+    private DocumentBuffer documentBuffer = new DocumentBuffer(8192);
+    private ColumnMapGrouper.GroupHandler groupHandler = new ColumnMapGrouper.GroupHandler() {
+        @Override
+        public void handleGroup(Object id, Map<String, Object> columnMap) {
+            addRecord(id, columnMap);
+            lastWrittenKey = id;
+            if (watermarkColumnName != null) {
+                trackWatermark(columnMap);
+            }
+        }
+    };
 
     public ColumnMapItemWriter(DatabaseClient client, String rootElementName) {
         this.mgr = client.newDocumentManager();
@@ -60,95 +113,249 @@ public class ColumnMapItemWriter implements ItemWriter<Map<String, Object>>, Ite
     }
 
     /**
-     * So what we need to do is, given an ID, we need to see if there's already a Map for that ID. If there is, we need
-     * to merge the data from the new item into the existing item.
-     * 
-     * When we get a column label like address/street, we need to tokenize it...
+     * Each column map is handed to the ColumnMapGrouper, which merges it into the existing column map with the same ID
+     * and decides when a group is complete. Complete groups are serialized and added to the current set of documents,
+     * which is written when it's full and at the end of every chunk.
      */
     @Override
     public void write(List<? extends Map<String, Object>> items) throws Exception {
-        Set<Object> idsToIgnore = new HashSet<>();
         for (Map<String, Object> columnMap : items) {
-            String idKey = columnMap.keySet().iterator().next();
-            Object id = columnMap.get(idKey);
-            idsToIgnore.add(id);
-            Map<String, Object> existingColumnMap = recordMap.get(id);
-            if (existingColumnMap != null && columnMapMerger != null) {
-                columnMapMerger.mergeColumnMaps(existingColumnMap, columnMap);
-            } else {
-                recordMap.put(id, columnMap);
-            }
+            columnMapGrouper.add(getId(columnMap), columnMap, groupHandler);
         }
-        writeRecords(idsToIgnore);
-    }
-
-    private void writeRecords(Set<Object> idsToIgnore) {
-        DocumentWriteSet set = mgr.newWriteSet();
-        Set<Object> recordIds = recordMap.keySet();
-        Set<Object> idsToRemove = new HashSet<>();
-        for (Object id : recordIds) {
-            if (idsToIgnore == null || !idsToIgnore.contains(id)) {
-                Map<String, Object> columnMap = recordMap.get(id);
-                try {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Writing record: " + columnMap);
-                    }
-                    String content = columnMapSerializer.serializeColumnMap(columnMap, this.rootElementName, null);
-                    String uri = generateUri(content, id);
-                    set.add(uri, metadata, new StringHandle(content));
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Writing URI: " + uri + "; content: " + content);
-                    }
-                    idsToRemove.add(id);
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
-            } else {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Ignoring ID for now: " + id);
-                }
-            }
+        columnMapGrouper.endOfChunk(groupHandler);
+        writeCurrentSet();
+        if (pipelineMetrics != null) {
+            reportBufferedCount();
         }
+    }
 
-        if (!set.isEmpty()) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Writing set of documents");
+    private void reportBufferedCount() {
+        int bufferedCount = columnMapGrouper.getBufferedCount();
+        pipelineMetrics.addBufferedGroups(bufferedCount - lastBufferedCount);
+        lastBufferedCount = bufferedCount;
+    }
+
+    /**
+     * The ID columns are resolved from the first column map and then reused, as every column map from a query has the
+     * same keys.
+     */
+    protected Object getId(Map<String, Object> columnMap) {
+        if (idKeys == null) {
+            idKeys = resolveIdKeys(columnMap);
+        }
+        if (idKeys.length == 1) {
+            return columnMap.get(idKeys[0]);
+        }
+        Object[] values = new Object[idKeys.length];
+        for (int i = 0; i < idKeys.length; i++) {
+            values[i] = columnMap.get(idKeys[i]);
+        }
+        return new CompositeKey(values);
+    }
+
+    /**
+     * Column labels are matched case-insensitively, as databases differ in the case of the labels they return.
+     */
+    private String[] resolveIdKeys(Map<String, Object> columnMap) {
+        if (idColumnNames == null || idColumnNames.length == 0) {
+            return new String[]{columnMap.keySet().iterator().next()};
+        }
+        String[] keys = new String[idColumnNames.length];
+        for (int i = 0; i < idColumnNames.length; i++) {
+            keys[i] = resolveKey(columnMap, idColumnNames[i]);
+        }
+        return keys;
+    }
+
+    private String resolveKey(Map<String, Object> columnMap, String columnName) {
+        for (String key : columnMap.keySet()) {
+            if (key.equalsIgnoreCase(columnName)) {
+                return key;
             }
-            if (!transformOn) {
-                mgr.write(set);
-            } else {
-                mgr.write(set, serverTransform);
+        }
+        return columnName;
+    }
+
+    /**
+     * Keeps the highest value of the watermark column of the groups handed to the DocumentBatchWriter; null values are
+     * ignored, and a merged group's values are each considered. It only becomes the watermark once the writer has been
+     * flushed, so that rows still held by the grouper or queued by the writer are never skipped by the next run.
+     */
+    protected void trackWatermark(Map<String, Object> columnMap) {
+        if (watermarkKey == null) {
+            watermarkKey = resolveKey(columnMap, watermarkColumnName);
+        }
+        Object value = columnMap.get(watermarkKey);
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                pendingWatermark = max(pendingWatermark, item);
             }
+        } else {
+            pendingWatermark = max(pendingWatermark, value);
+        }
+    }
+
+    private Object max(Object current, Object value) {
+        if (value != null && (current == null || watermarkComparator.compare(value, current) > 0)) {
+            return value;
+        }
+        return current;
+    }
+
+    /**
+     * Flushes the DocumentBatchWriter; every group handed to it has then been written, so its watermark is kept.
+     */
+    private void flushDocuments() {
+        documentBatchWriter.flush();
+        watermark = max(watermark, pendingWatermark);
+        pendingWatermark = null;
+    }
 
+    private void addRecord(Object id, Map<String, Object> columnMap) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Writing record: " + columnMap);
+        }
+        long serializeStart = pipelineMetrics != null ? System.nanoTime() : 0;
+        Format documentFormat;
+        if (columnMapTransformer != null) {
+            documentFormat = serialize(columnMapTransformer.transform(columnMap, rootElementName),
+                    transformedRootName.getLocalPart(), transformedRootName.getNamespaceURI());
+        } else {
+            documentFormat = serialize(columnMap, this.rootElementName, null);
+        }
+        if (pipelineMetrics != null) {
+            pipelineMetrics.recordSerialization(System.nanoTime() - serializeStart);
+        }
+        String uri = legacyUriGenerator ? generateUri(documentBuffer.toUtf8String(), id) : generateUri(id, documentFormat);
+        if (contentHashIndex != null && contentHashIndex.isUnchanged(uri, documentBuffer.contentHash(), contentHashUpdates)) {
+            unchangedCount++;
             if (logger.isDebugEnabled()) {
-                logger.debug("Finished writing set of documents");
+                logger.debug("Skipping unchanged document: " + uri);
             }
+            return;
+        }
+        byte[] content = documentBuffer.toByteArray();
+        if (currentSet == null) {
+            currentSet = mgr.newWriteSet();
+            currentSetBytes = 0;
+        }
+        currentSet.add(uri, metadata, new SourceKeyBytesHandle(content, id).withFormat(documentFormat));
+        currentSetBytes += content.length;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Writing URI: " + uri + "; content: " + documentBuffer.toUtf8String());
+        }
+
+        int setSize = batchSizer != null ? batchSizer.getBatchSize() : maxSetSize;
+        if (currentSet.size() >= setSize ||
+                (batchSizer != null && batchSizer.getMaxBatchBytes() > 0 && currentSetBytes >= batchSizer.getMaxBatchBytes())) {
+            writeCurrentSet();
         }
-        recordIds.removeAll(idsToRemove);
     }
 
     /**
-     * Does some hacking to determine if we need a json or xml suffix.
+     * Serializes the column map into the document buffer. A StreamingColumnMapSerializer writes the bytes directly and
+     * declares its format; the output of any other ColumnMapSerializer is encoded as UTF-8, and its format is
+     * determined from the first character.
      *
-     * TODO UriGenerator needs more support; it needs to be smart enough to determine the suffix
-     * itself.
+     * @return the format of the serialized document
+     */
+    private Format serialize(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri) {
+        documentBuffer.reset();
+        if (columnMapSerializer instanceof StreamingColumnMapSerializer) {
+            StreamingColumnMapSerializer serializer = (StreamingColumnMapSerializer) columnMapSerializer;
+            serializer.serializeColumnMap(columnMap, rootLocalName, rootNamespaceUri, documentBuffer);
+            return serializer.getFormat();
+        }
+        String content = columnMapSerializer.serializeColumnMap(columnMap, rootLocalName, rootNamespaceUri);
+        byte[] bytes = content.getBytes(UTF8);
+        documentBuffer.write(bytes, 0, bytes.length);
+        return formatOf(content);
+    }
+
+    private Format formatOf(String content) {
+        if (content.startsWith("{")) {
+            return Format.JSON;
+        } else if (content.startsWith("<")) {
+            return Format.XML;
+        }
+        return Format.UNKNOWN;
+    }
+
+    private void writeCurrentSet() {
+        if (currentSet != null && !currentSet.isEmpty()) {
+            writeSet(currentSet, currentSetBytes);
+        }
+        currentSet = null;
+    }
+
+    /**
+     * Writes the set of documents, and if a batch sizer is set, informs it of how long the write took so the size of
+     * subsequent sets can be adjusted.
+     */
+    private void writeSet(DocumentWriteSet set, long setBytes) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Writing set of documents");
+        }
+        long start = System.currentTimeMillis();
+        documentBatchWriter.write(set);
+        long elapsed = System.currentTimeMillis() - start;
+        if (batchSizer != null) {
+            batchSizer.recordBatch(set.size(), setBytes, elapsed);
+        }
+        if (pipelineMetrics != null) {
+            pipelineMetrics.recordBatch(set.size(), setBytes, elapsed);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Finished writing set of documents");
+        }
+    }
+
+    /**
+     * A document that wasn't written, e.g. because it was dead-lettered, mustn't be recorded in the content hash index,
+     * or the next run would skip it as unchanged.
+     */
+    @Override
+    public void handleFailedDocument(String uri) {
+        if (contentHashUpdates != null) {
+            contentHashUpdates.remove(uri);
+        }
+    }
+
+    /**
+     * The suffix is based on the format of the serialized document. This replaces generateUri(String content, Object
+     * id), as a StreamingColumnMapSerializer doesn't produce the content as a String.
      *
-     * @param content
      * @param id
+     * @param format
      * @return
      */
-    protected String generateUri(String content, Object id) {
+    protected String generateUri(Object id, Format format) {
         String uri = "/" + this.rootElementName + "/" + id;
-        if (content.startsWith("{")) {
-            return uri += ".json";
-        } else if (content.startsWith("<")) {
-            return uri += ".xml";
+        if (Format.JSON.equals(format)) {
+            return uri + ".json";
+        } else if (Format.XML.equals(format)) {
+            return uri + ".xml";
         }
         return uri;
     }
 
+    /**
+     * Still called instead of generateUri(Object, Format) when a subclass overrides it, at the cost of converting
+     * each document to a String.
+     *
+     * @deprecated override generateUri(Object, Format) instead, which doesn't need the content as a String
+     */
+    @Deprecated
+    protected String generateUri(String content, Object id) {
+        return generateUri(id, formatOf(content));
+    }
+
     @Override
     public void open(ExecutionContext executionContext) {
+        Method legacyGenerateUri = ReflectionUtils.findMethod(getClass(), "generateUri", String.class, Object.class);
+        legacyUriGenerator = !ColumnMapItemWriter.class.equals(legacyGenerateUri.getDeclaringClass());
+
         if (columnMapSerializer == null) {
             columnMapSerializer = new DefaultStaxColumnMapSerializer();
         }
@@ -156,33 +363,246 @@ public class ColumnMapItemWriter implements ItemWriter<Map<String, Object>>, Ite
         if (columnMapMerger == null) {
             columnMapMerger = new DefaultColumnMapMerger();
         }
+
+        if (columnMapGrouper == null) {
+            columnMapGrouper = new ChunkColumnMapGrouper();
+        }
+        columnMapGrouper.setColumnMapMerger(columnMapMerger);
+
+        if (documentBatchWriter == null) {
+            documentBatchWriter = new DocumentManagerBatchWriter(mgr, transformOn ? serverTransform : null);
+        }
+        if (documentBatchWriter instanceof ItemStream) {
+            ((ItemStream) documentBatchWriter).open(executionContext);
+        }
+
+        if (contentHashIndex != null) {
+            contentHashUpdates = contentHashIndex.newUpdates();
+            unchangedCount = 0;
+        }
+
+        if (watermarkColumnName != null && executionContext.containsKey(WATERMARK_KEY)) {
+            watermark = executionContext.get(WATERMARK_KEY);
+        }
+        finished = false;
+        finishFailed = false;
     }
 
     @Override
-    public void update(ExecutionContext executionContext) throws ItemStreamException {
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    /**
+     * Once every chunk has been written, the remaining groups are written and the DocumentBatchWriter is flushed here
+     * rather than in close, as Spring Batch calls close after the status of the step has been saved and only logs its
+     * exceptions. A failure here - e.g. of a final set, or of an asynchronous batch - therefore fails the step instead
+     * of leaving it COMPLETED with documents missing.
+     */
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (finished || stepExecution.getStatus() != BatchStatus.COMPLETED) {
+            return null;
+        }
+        try {
+            finish();
+            update(stepExecution.getExecutionContext());
+        } catch (RuntimeException ex) {
+            finishFailed = true;
+            logger.error("Unable to write the remaining documents: " + ex.getMessage(), ex);
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(ex);
+            return ExitStatus.FAILED;
+        }
+        return null;
+    }
 
+    /**
+     * Writes the groups still held by the grouper and waits for every document to be written.
+     */
+    private void finish() {
+        columnMapGrouper.endOfInput(groupHandler);
+        writeCurrentSet();
+        if (pipelineMetrics != null) {
+            reportBufferedCount();
+        }
+        flushDocuments();
+        finished = true;
     }
 
     /**
-     * This close method from ItemStream gives us a way to write all the remaining records in our map after all the rows
-     * have been read from the SQL database.
+     * Stores the watermark of the documents written so far so that it's saved with the step, where
+     * WatermarkJobListener can find it.
+     * <p>
+     * When saveState is true, this also checkpoints the ID of the last group written. This is called after each chunk
+     * is written, by which time every complete group has been handed to the DocumentBatchWriter; it's flushed so that
+     * the checkpoint never gets ahead of what has actually been written. A group that may continue in the next chunk
+     * hasn't been handed off yet, so on restart it's read again in full rather than written half-merged. A
+     * DocumentBatchWriter that is also an ItemStream, e.g. ZipDocumentBatchWriter, then checkpoints its own state.
+     * <p>
+     * With a content hash index, the hashes of the documents written so far are applied once the writer has been
+     * flushed - at every checkpoint when saveState is true, and otherwise once contentHashApplyInterval hashes are
+     * pending - so that the pending hashes don't grow with the size of the table.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        boolean checkpoint = saveState && lastWrittenKey != null;
+        boolean applyHashes = contentHashIndex != null && contentHashUpdates.size() > 0 &&
+                (checkpoint || contentHashUpdates.size() >= contentHashApplyInterval);
+        if (checkpoint || applyHashes) {
+            flushDocuments();
+        }
+        if (watermark != null) {
+            executionContext.put(WATERMARK_KEY, watermark);
+        }
+        if (checkpoint) {
+            executionContext.put(LAST_WRITTEN_KEY, lastWrittenKey);
+            if (documentBatchWriter instanceof ItemStream) {
+                ((ItemStream) documentBatchWriter).update(executionContext);
+            }
+        }
+        if (applyHashes) {
+            contentHashIndex.apply(contentHashUpdates);
+        }
+    }
+
+    /**
+     * The remaining records are normally written by afterStep; if they haven't been - because the step failed, or
+     * the writer isn't used in a step - they're written here.
      */
     @Override
     public void close() throws ItemStreamException {
         if (logger.isDebugEnabled()) {
             logger.debug("Closing Writer, and writing remaining records");
         }
-        writeRecords(null);
+        boolean written = false;
+        try {
+            if (!finished && !finishFailed) {
+                finish();
+            }
+            documentBatchWriter.close();
+            written = finished;
+        } finally {
+            if (contentHashIndex != null) {
+                if (logger.isInfoEnabled()) {
+                    logger.info("Unchanged documents skipped: " + unchangedCount);
+                }
+                // The remaining hashes are only applied when every document was written or dead-lettered, and
+                // dead-lettered documents have been removed from the updates
+                contentHashIndex.release(contentHashUpdates, written);
+                contentHashUpdates = null;
+            }
+        }
     }
 
     public void setColumnMapSerializer(ColumnMapSerializer columnMapSerializer) {
         this.columnMapSerializer = columnMapSerializer;
     }
 
+    /**
+     * Optional; if set, each merged column map is transformed before it's serialized, e.g. to wrap it in an envelope.
+     * The transform is included in the serialization time recorded by the pipeline metrics.
+     */
+    public void setColumnMapTransformer(ColumnMapTransformer columnMapTransformer) {
+        this.columnMapTransformer = columnMapTransformer;
+        this.transformedRootName = columnMapTransformer != null ?
+                QName.valueOf(columnMapTransformer.getRootName(rootElementName)) : null;
+    }
+
     public void setColumnMapMerger(ColumnMapMerger columnMapMerger) {
         this.columnMapMerger = columnMapMerger;
     }
 
+    /**
+     * When set, the documents written for a chunk are split into sets whose size is determined by the batch sizer,
+     * instead of being written as a single set.
+     */
+    public void setBatchSizer(AdaptiveBatchSizer batchSizer) {
+        this.batchSizer = batchSizer;
+    }
+
+    /**
+     * Defaults to a ChunkColumnMapGrouper.
+     */
+    public void setColumnMapGrouper(ColumnMapGrouper columnMapGrouper) {
+        this.columnMapGrouper = columnMapGrouper;
+    }
+
+    /**
+     * The names of the columns that identify a document; when more than one is given, the ID is a CompositeKey.
+     * Defaults to the first column.
+     */
+    public void setIdColumnNames(String... idColumnNames) {
+        this.idColumnNames = idColumnNames;
+    }
+
+    /**
+     * When set, the highest value of this column is tracked and stored in the step ExecutionContext, so that the next
+     * run can select only the rows that have been added or changed since.
+     */
+    public void setWatermarkColumnName(String watermarkColumnName) {
+        this.watermarkColumnName = watermarkColumnName;
+    }
+
+    /**
+     * When true, the ID of the last group written is saved at every checkpoint so that a CheckpointedCursorItemReader
+     * can resume after it. Requires the rows to be ordered by ID and grouped by an OrderedColumnMapGrouper, so that
+     * every group before the checkpoint is complete. Defaults to false.
+     */
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    /**
+     * When set, the time spent serializing each document and writing each set of documents is recorded, along with the
+     * number of groups buffered by the grouper. With an asynchronous DocumentBatchWriter, the time to write a set is
+     * only the time to hand it off.
+     */
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * When set, documents whose content is the same as when they were last written are skipped. The index is updated
+     * as documents are written; see update.
+     */
+    public void setContentHashIndex(ContentHashIndex contentHashIndex) {
+        this.contentHashIndex = contentHashIndex;
+    }
+
+    /**
+     * @param contentHashApplyInterval with a content hash index and without saveState, the number of pending hashes
+     *                                 after which the writer is flushed and the hashes are applied; defaults to 10000
+     */
+    public void setContentHashApplyInterval(int contentHashApplyInterval) {
+        this.contentHashApplyInterval = contentHashApplyInterval;
+    }
+
+    public Object getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * The maximum number of documents in a set when no batch sizer is set; defaults to 1000.
+     */
+    public void setMaxSetSize(int maxSetSize) {
+        this.maxSetSize = maxSetSize;
+    }
+
+    /**
+     * Defaults to a DocumentManagerBatchWriter that writes each set synchronously, using the transform if one is set.
+     */
+    public void setDocumentBatchWriter(DocumentBatchWriter documentBatchWriter) {
+        this.documentBatchWriter = documentBatchWriter;
+    }
+
+    public GenericDocumentManager getDocumentManager() {
+        return mgr;
+    }
+
+    public ServerTransform getServerTransform() {
+        return transformOn ? serverTransform : null;
+    }
+
     public void setTransform(Format format, String transformName, Map<String, String> transformParameters) {
         this.format = format;
         mgr.setContentFormat(format);
@@ -0,0 +1,43 @@
+package com.marklogic.spring.batch.item;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * ID for a column map that is identified by more than one column. The string form, which is used in URIs, joins the
+ * values with a hyphen.
+ */
+public class CompositeKey implements Serializable {
+
+    private final Object[] values;
+
+    public CompositeKey(Object... values) {
+        this.values = values;
+    }
+
+    public Object[] getValues() {
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CompositeKey && Arrays.equals(values, ((CompositeKey) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append("-");
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,323 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.helper.LoggingObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Local index of the documents written by previous runs, mapping the hash of each URI to a hash of the document's
+ * content. A ColumnMapItemWriter consults the index before writing a document, and skips the document if its content
+ * is unchanged, so the cost of a reload depends on the number of changed rows rather than the size of the table.
+ * <p>
+ * Both hashes are 64-bit FNV-1a. The index is an open-addressing hash table with linear probing, stored in a
+ * memory-mapped file: a 16-byte header (a marker and the capacity and size of the table) followed by 16-byte slots
+ * holding a URI hash and a content hash. A URI hash of zero marks an empty slot. The table doubles whenever it would be
+ * more than half full.
+ * <p>
+ * Changes are not applied as documents are checked; each writer collects them in an Updates instance, and applies them
+ * once the documents have been successfully written - periodically during the step, and when the writer is closed. A
+ * failed run therefore never causes documents to be skipped in the next run, and at most the documents written since
+ * the last apply are written again after a crash. The index can be shared by several writers; the file is closed when
+ * every writer has released its Updates. Only the content is hashed, so changes to metadata or transforms are not
+ * detected; deleting the file causes every document to be written again.
+ * <p>
+ * As the file is mapped into a single buffer, it can hold at most MAX_URIS URIs (a 1GB file). A document with a new URI
+ * that wouldn't fit is rejected when it's checked, before it's written, rather than when the updates are applied.
+ */
+public class ContentHashIndex extends LoggingObject {
+
+    private static final long MARKER = 0x526f77546f446f63L;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 16;
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    /**
+     * The table is kept at most half full, and a mapped buffer can't exceed 2GB.
+     */
+    public static final int MAX_URIS = MAX_CAPACITY / 2;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private File file;
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    private long skippedCount;
+    private long writtenCount;
+    private long pendingNewCount;
+    private int openUpdatesCount;
+
+    public ContentHashIndex(File file) {
+        this.file = file;
+    }
+
+    public static long hash(byte[] bytes, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    public static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * @return true if the index holds the same content hash for the URI; if not, the hashes are added to the updates
+     */
+    public synchronized boolean isUnchanged(String uri, long contentHash, Updates updates) {
+        if (buffer == null) {
+            open();
+        }
+        long uriHash = hash(uri);
+        int slot = findSlot(uriHash);
+        long existing = buffer.getLong(slotOffset(slot));
+        if (existing == uriHash && buffer.getLong(slotOffset(slot) + 8) == contentHash) {
+            skippedCount++;
+            return true;
+        }
+        if (existing == 0) {
+            // Counts the new URIs of every writer, so that the limit is enforced before any of them is written
+            if (size + pendingNewCount >= MAX_URIS) {
+                throw new IllegalStateException("Content hash index " + file.getAbsolutePath() + " is full; it can " +
+                        "hold at most " + MAX_URIS + " URIs");
+            }
+            pendingNewCount++;
+            updates.newCount++;
+        }
+        updates.add(uriHash, contentHash);
+        return false;
+    }
+
+    /**
+     * Each writer needs its own Updates, and must release it via release once it's done.
+     */
+    public synchronized Updates newUpdates() {
+        openUpdatesCount++;
+        return new Updates();
+    }
+
+    /**
+     * @param apply true if the documents have been written, in which case the updates are applied; otherwise they're
+     *              discarded. The file is closed once every Updates has been released.
+     */
+    public synchronized void release(Updates updates, boolean apply) {
+        try {
+            if (apply) {
+                apply(updates);
+            } else {
+                pendingNewCount -= updates.newCount;
+                updates.clear();
+            }
+        } finally {
+            openUpdatesCount--;
+            if (openUpdatesCount <= 0) {
+                close();
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (randomAccessFile == null) {
+            return;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Content hash index: documents written: " + writtenCount + "; unchanged documents skipped: "
+                    + skippedCount + "; URIs in index: " + size);
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException ex) {
+            logger.warn("Unable to close content hash index: " + ex.getMessage());
+        }
+        randomAccessFile = null;
+        buffer = null;
+    }
+
+    /**
+     * Adds the hashes of documents that have been written to the index and forces the changes to disk.
+     */
+    public synchronized void apply(Updates updates) {
+        if (buffer == null) {
+            open();
+        }
+        ensureCapacity(size + updates.count);
+        int applied = 0;
+        for (int i = 0; i < updates.count; i++) {
+            if (updates.entries[i * 2] != 0) {
+                put(updates.entries[i * 2], updates.entries[i * 2 + 1]);
+                applied++;
+            }
+        }
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, size);
+        buffer.force();
+        writtenCount += applied;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Applied " + applied + " updates to content hash index; URIs in index: " + size);
+        }
+        pendingNewCount -= updates.newCount;
+        updates.clear();
+    }
+
+    protected void open() {
+        try {
+            boolean exists = file.exists() && file.length() > 0;
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (exists) {
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+                if (buffer.getLong(0) != MARKER) {
+                    throw new IllegalStateException("Not a content hash index: " + file.getAbsolutePath());
+                }
+                capacity = buffer.getInt(8);
+                size = buffer.getInt(12);
+                logger.info("Opened content hash index with " + size + " URIs: " + file.getAbsolutePath());
+            } else {
+                map(MIN_CAPACITY);
+                buffer.putLong(0, MARKER);
+                buffer.putInt(8, capacity);
+                buffer.putInt(12, 0);
+                logger.info("Created content hash index: " + file.getAbsolutePath());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to open content hash index: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void map(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES + (long) capacity * SLOT_BYTES);
+    }
+
+    /**
+     * Keeps the table at most half full, so that probe sequences stay short.
+     */
+    private void ensureCapacity(int requiredSize) {
+        int newCapacity = capacity;
+        while (requiredSize > newCapacity / 2) {
+            newCapacity *= 2;
+        }
+        if (newCapacity == capacity) {
+            return;
+        }
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Content hash index cannot hold more than " + (MAX_CAPACITY / 2) + " URIs");
+        }
+        long[] entries = new long[size * 2];
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long uriHash = buffer.getLong(slotOffset(slot));
+            if (uriHash != 0) {
+                entries[count++] = uriHash;
+                entries[count++] = buffer.getLong(slotOffset(slot) + 8);
+            }
+        }
+        try {
+            map(newCapacity);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to grow content hash index: " + ex.getMessage(), ex);
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            buffer.putLong(slotOffset(slot), 0);
+            buffer.putLong(slotOffset(slot) + 8, 0);
+        }
+        size = 0;
+        for (int i = 0; i < count; i += 2) {
+            put(entries[i], entries[i + 1]);
+        }
+    }
+
+    private void put(long uriHash, long contentHash) {
+        int slot = findSlot(uriHash);
+        int offset = slotOffset(slot);
+        if (buffer.getLong(offset) == 0) {
+            buffer.putLong(offset, uriHash);
+            size++;
+        }
+        buffer.putLong(offset + 8, contentHash);
+    }
+
+    /**
+     * @return the slot holding the URI hash, or the empty slot where it would be added
+     */
+    private int findSlot(long uriHash) {
+        int mask = capacity - 1;
+        int slot = (int) (uriHash ^ (uriHash >>> 32)) & mask;
+        while (true) {
+            long existing = buffer.getLong(slotOffset(slot));
+            if (existing == 0 || existing == uriHash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Hashes of documents that are to be written, collected by a single writer until they can be applied.
+     */
+    public static class Updates {
+        private long[] entries = new long[256];
+        private int count;
+        private int newCount;
+
+        private void add(long uriHash, long contentHash) {
+            if ((count + 1) * 2 > entries.length) {
+                long[] newEntries = new long[entries.length * 2];
+                System.arraycopy(entries, 0, newEntries, 0, count * 2);
+                entries = newEntries;
+            }
+            entries[count * 2] = uriHash;
+            entries[count * 2 + 1] = contentHash;
+            count++;
+        }
+
+        /**
+         * Discards the hashes of a document that turned out not to be written, e.g. because it was added to a
+         * DeadLetterFile, so that the next run doesn't skip it.
+         */
+        public void remove(String uri) {
+            long uriHash = hash(uri);
+            for (int i = 0; i < count; i++) {
+                if (entries[i * 2] == uriHash) {
+                    // A URI hash of zero is never applied
+                    entries[i * 2] = 0;
+                }
+            }
+        }
+
+        private void clear() {
+            count = 0;
+            newCount = 0;
+        }
+
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.marklogic.spring.batch.item;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.client.io.BytesHandle;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Appends documents that could not be written to MarkLogic to a local file, one JSON object per line, with the URI,
+ * the ID of the rows the document was built from, the error, and the content of the document, so that they can be
+ * fixed and loaded later. The file is only created once the first document is added. A single instance can be shared
+ * by every partition of a step; each RetryingDocumentBatchWriter using it retains it, and the file is closed and the
+ * number of documents added is logged once the last of them has been closed, i.e. after its final documents have been
+ * written.
+ */
+public class DeadLetterFile extends LoggingObject {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File file;
+    private JsonFactory jsonFactory = new JsonFactory();
+    private Writer writer;
+    private long count;
+    private int references;
+
+    public DeadLetterFile(File file) {
+        this.file = file;
+        jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    public synchronized void add(DocumentWriteOperation op, Throwable error) {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+            }
+            JsonGenerator gen = jsonFactory.createGenerator(writer);
+            gen.writeStartObject();
+            gen.writeStringField("uri", op.getUri());
+            Object content = op.getContent();
+            if (content instanceof SourceKeyBytesHandle) {
+                Object sourceKey = ((SourceKeyBytesHandle) content).getSourceKey();
+                gen.writeStringField("sourceKey", sourceKey != null ? sourceKey.toString() : null);
+            }
+            gen.writeStringField("error", error.getMessage());
+            if (content instanceof BytesHandle) {
+                gen.writeStringField("content", new String(((BytesHandle) content).get(), UTF8));
+            }
+            gen.writeEndObject();
+            gen.close();
+            writer.write('\n');
+            // Flushed for each document, as dead letters are rare and should survive the JVM failing
+            writer.flush();
+            count++;
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write to dead letter file " + file.getAbsolutePath() + ": " + ex.getMessage(), ex);
+        }
+        logger.warn("Wrote document " + op.getUri() + " to dead letter file " + file.getAbsolutePath() + ": " + error.getMessage());
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized void retain() {
+        references++;
+    }
+
+    /**
+     * Closes the file once every user that retained it has released it.
+     */
+    public synchronized void release() {
+        if (--references <= 0) {
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                logger.warn("Unable to close dead letter file " + file.getAbsolutePath() + ": " + ex.getMessage());
+            }
+            writer = null;
+        }
+        if (count > 0) {
+            logger.warn(count + " documents could not be written and were added to " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.document.DocumentWriteSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes each document to a file under a directory, at the path given by its URI, e.g. /customer/1.xml is written to
+ * (dir)/customer/1.xml, with its metadata in (dir)/customer/1.xml.metadata.json. Existing files are overwritten. Each
+ * file is written with a single FileChannel write of the serialized document, so no further buffering is needed.
+ */
+public class DirectoryDocumentBatchWriter extends AbstractFileDocumentBatchWriter {
+
+    private Path baseDir;
+    private Set<Path> createdDirs = new HashSet<>();
+
+    public DirectoryDocumentBatchWriter(File baseDir) {
+        this.baseDir = baseDir.toPath().toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void write(DocumentWriteSet set) {
+        try {
+            for (DocumentWriteOperation op : set) {
+                if (op.getOperationType() != DocumentWriteOperation.OperationType.DOCUMENT_WRITE) {
+                    continue;
+                }
+                Path path = baseDir.resolve(toRelativePath(op.getUri()));
+                Path dir = path.getParent();
+                if (createdDirs.add(dir)) {
+                    Files.createDirectories(dir);
+                }
+                byte[] content = getContent(op);
+                writeFile(path, content);
+                byte[] metadata = getMetadataSidecar(op);
+                if (metadata != null) {
+                    writeFile(dir.resolve(path.getFileName() + METADATA_SUFFIX), metadata);
+                }
+                documentCount++;
+                byteCount += content.length;
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write documents to " + baseDir + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    protected void writeFile(Path path, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Each file is complete once write returns
+    }
+
+    @Override
+    public void close() {
+        logSummary(baseDir.toString());
+    }
+}
@@ -0,0 +1,25 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.document.DocumentWriteSet;
+
+/**
+ * Defines how a set of documents assembled by ColumnMapItemWriter is sent to its destination. The default
+ * implementation writes the set synchronously via a document manager; other implementations may write asynchronously,
+ * in which case close is expected to wait for all writes to finish.
+ */
+public interface DocumentBatchWriter {
+
+    void write(DocumentWriteSet set);
+
+    /**
+     * Must not return until every document passed to write so far has been written, and must throw an exception if
+     * any of them could not be written. Called before a ColumnMapItemWriter saves a restart checkpoint.
+     */
+    void flush();
+
+    /**
+     * Called when the owning ColumnMapItemWriter is closed. Must not return until every document has been written, and
+     * must throw an exception if any document could not be written.
+     */
+    void close();
+}
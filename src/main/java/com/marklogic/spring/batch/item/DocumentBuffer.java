@@ -0,0 +1,31 @@
+package com.marklogic.spring.batch.item;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Growable byte buffer that a ColumnMapItemWriter reuses for serializing every document, so that the buffer only has
+ * to grow until it fits the largest document.
+ */
+public class DocumentBuffer extends ByteArrayOutputStream {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    public DocumentBuffer(int initialSize) {
+        super(initialSize);
+    }
+
+    /**
+     * @return a ContentHashIndex hash of the bytes in the buffer, computed without copying them
+     */
+    public long contentHash() {
+        return ContentHashIndex.hash(buf, 0, count);
+    }
+
+    /**
+     * @return the UTF-8 text in the buffer; intended for logging
+     */
+    public String toUtf8String() {
+        return new String(buf, 0, count, UTF8);
+    }
+}
@@ -0,0 +1,40 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.document.GenericDocumentManager;
+import com.marklogic.client.document.ServerTransform;
+
+/**
+ * Default implementation that writes each set synchronously on the calling thread.
+ */
+public class DocumentManagerBatchWriter implements DocumentBatchWriter {
+
+    private GenericDocumentManager mgr;
+    private ServerTransform serverTransform;
+
+    /**
+     * @param mgr
+     * @param serverTransform optional; if not null, each set is written with this transform
+     */
+    public DocumentManagerBatchWriter(GenericDocumentManager mgr, ServerTransform serverTransform) {
+        this.mgr = mgr;
+        this.serverTransform = serverTransform;
+    }
+
+    @Override
+    public void write(DocumentWriteSet set) {
+        if (serverTransform == null) {
+            mgr.write(set);
+        } else {
+            mgr.write(set, serverTransform);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,41 @@
+package com.marklogic.spring.batch.item;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+/**
+ * Orders IDs of column maps. Numbers of different types are compared by value, so that e.g. an Integer and a Long
+ * from different queries are treated as the same ID. CompositeKeys are compared value by value, nulls come first, and
+ * values that aren't mutually comparable are compared by their string form.
+ */
+public class KeyComparator implements Comparator<Object> {
+
+    @Override
+    public int compare(Object o1, Object o2) {
+        if (o1 == o2) {
+            return 0;
+        } else if (o1 == null) {
+            return -1;
+        } else if (o2 == null) {
+            return 1;
+        }
+        if (o1 instanceof CompositeKey && o2 instanceof CompositeKey) {
+            Object[] values1 = ((CompositeKey) o1).getValues();
+            Object[] values2 = ((CompositeKey) o2).getValues();
+            for (int i = 0; i < Math.min(values1.length, values2.length); i++) {
+                int result = compare(values1[i], values2[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return values1.length - values2.length;
+        }
+        if (o1 instanceof Number && o2 instanceof Number && o1.getClass() != o2.getClass()) {
+            return new BigDecimal(o1.toString()).compareTo(new BigDecimal(o2.toString()));
+        }
+        if (o1 instanceof Comparable && o1.getClass() == o2.getClass()) {
+            return ((Comparable<Object>) o1).compareTo(o2);
+        }
+        return o1.toString().compareTo(o2.toString());
+    }
+}
@@ -0,0 +1,231 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.FailedRequestException;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.document.GenericDocumentManager;
+import com.marklogic.client.document.ServerTransform;
+import com.marklogic.client.helper.LoggingObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads sets of documents across several MarkLogic hosts, so that no single e-node becomes the bottleneck. Each set
+ * is written synchronously to the available host with the fewest requests in progress; ties go to the host after the
+ * one chosen last. This only balances anything when the writer is shared by several threads, e.g. the partitions of a
+ * step, so a single instance is meant to be shared by every ColumnMapItemWriter in a step.
+ * <p>
+ * When a write fails with a server error other than 500 - e.g. 503 when a host is in maintenance mode - or an I/O
+ * error, including a timeout, the host is taken out of rotation for a backoff period that doubles with each
+ * consecutive failure, and the set is retried on another host. A 4xx error is a problem with the set rather than the
+ * host, as is a 500 error, which MarkLogic returns when e.g. a document fails its transform, so these are thrown
+ * without trying other hosts or taking the host out of rotation. If every host fails, the last error is thrown.
+ * <p>
+ * The number of sets written to each host is logged and the clients are released when the last writer returned by
+ * withTransform is closed - i.e. after every ColumnMapItemWriter sharing this has written its remaining documents - or
+ * when this writer itself is closed.
+ */
+public class LoadBalancingDocumentBatchWriter extends LoggingObject implements DocumentBatchWriter {
+
+    private List<Host> hosts = new ArrayList<>();
+    private AtomicInteger nextHost = new AtomicInteger();
+    private long initialBackoff = 1000;
+    private long maxBackoff = 60000;
+    private ServerTransform serverTransform;
+    private AtomicInteger openWriters = new AtomicInteger();
+    private AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param clients         a client for each host, keyed by host name
+     * @param serverTransform optional; if not null, each set is written with this transform
+     */
+    public LoadBalancingDocumentBatchWriter(Map<String, DatabaseClient> clients, ServerTransform serverTransform) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("At least one host is required");
+        }
+        for (Map.Entry<String, DatabaseClient> entry : clients.entrySet()) {
+            hosts.add(new Host(entry.getKey(), entry.getValue()));
+        }
+        this.serverTransform = serverTransform;
+    }
+
+    /**
+     * Every writer must be obtained before any of them is closed, as the clients are released once they've all been
+     * closed.
+     *
+     * @return a writer that shares this writer's hosts, but writes each set with the given transform
+     */
+    public DocumentBatchWriter withTransform(final ServerTransform transform) {
+        openWriters.incrementAndGet();
+        return new DocumentBatchWriter() {
+            private AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public void write(DocumentWriteSet set) {
+                LoadBalancingDocumentBatchWriter.this.write(set, transform);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+                if (closed.compareAndSet(false, true) && openWriters.decrementAndGet() == 0) {
+                    release();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void write(DocumentWriteSet set) {
+        write(set, serverTransform);
+    }
+
+    protected void write(DocumentWriteSet set, ServerTransform transform) {
+        List<Host> tried = new ArrayList<>();
+        RuntimeException lastFailure = null;
+        Host host;
+        while ((host = selectHost(tried)) != null) {
+            tried.add(host);
+            host.outstanding.incrementAndGet();
+            try {
+                host.write(set, transform);
+                host.succeeded();
+                return;
+            } catch (FailedRequestException ex) {
+                int status = ex.getServerStatusCode();
+                if (status >= 400 && status <= 500) {
+                    throw ex;
+                }
+                lastFailure = ex;
+                host.failed(ex);
+            } catch (RuntimeException ex) {
+                lastFailure = ex;
+                host.failed(ex);
+            } finally {
+                host.outstanding.decrementAndGet();
+            }
+        }
+        if (lastFailure == null) {
+            throw new RuntimeException("Unable to write documents; no host is available");
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Chooses the host with the fewest requests in progress among those that haven't been tried for this set. Hosts
+     * that are backing off are skipped unless every untried host is backing off, in which case the one whose backoff
+     * ends first is chosen, so that a set is never rejected without trying at least one host.
+     */
+    protected Host selectHost(List<Host> tried) {
+        long now = System.currentTimeMillis();
+        int start = Math.abs(nextHost.getAndIncrement() % hosts.size());
+        Host best = null;
+        Host earliestBackingOff = null;
+        for (int i = 0; i < hosts.size(); i++) {
+            Host host = hosts.get((start + i) % hosts.size());
+            if (tried.contains(host)) {
+                continue;
+            }
+            if (host.unavailableUntil > now) {
+                if (earliestBackingOff == null || host.unavailableUntil < earliestBackingOff.unavailableUntil) {
+                    earliestBackingOff = host;
+                }
+            } else if (best == null || host.outstanding.get() < best.outstanding.get()) {
+                best = host;
+            }
+        }
+        if (best == null && tried.isEmpty()) {
+            return earliestBackingOff;
+        }
+        return best;
+    }
+
+    @Override
+    public void flush() {
+        // Every write is synchronous
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        for (Host host : hosts) {
+            if (logger.isInfoEnabled()) {
+                logger.info("Host " + host.name + ": sets written: " + host.writeCount.get() +
+                        "; failed writes: " + host.failureCount.get());
+            }
+            host.client.release();
+        }
+    }
+
+    /**
+     * @param initialBackoff milliseconds that a host is out of rotation after its first consecutive failure; defaults
+     *                       to 1000
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * @param maxBackoff upper bound on the milliseconds that a host is out of rotation; defaults to 60000
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    protected class Host {
+        private String name;
+        private DatabaseClient client;
+        private GenericDocumentManager mgr;
+        private AtomicInteger outstanding = new AtomicInteger();
+        private AtomicLong writeCount = new AtomicLong();
+        private AtomicLong failureCount = new AtomicLong();
+        private volatile int consecutiveFailures;
+        private volatile long unavailableUntil;
+
+        private Host(String name, DatabaseClient client) {
+            this.name = name;
+            this.client = client;
+            this.mgr = client.newDocumentManager();
+        }
+
+        private void write(DocumentWriteSet set, ServerTransform serverTransform) {
+            if (serverTransform == null) {
+                mgr.write(set);
+            } else {
+                mgr.write(set, serverTransform);
+            }
+        }
+
+        private void succeeded() {
+            writeCount.incrementAndGet();
+            consecutiveFailures = 0;
+        }
+
+        private synchronized void failed(RuntimeException ex) {
+            failureCount.incrementAndGet();
+            long backoff = Math.min(maxBackoff, initialBackoff << Math.min(consecutiveFailures, 20));
+            consecutiveFailures++;
+            unavailableUntil = System.currentTimeMillis() + backoff;
+            logger.warn("Unable to write documents to host " + name + ", taking it out of rotation for " + backoff +
+                    "ms: " + ex.getMessage());
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
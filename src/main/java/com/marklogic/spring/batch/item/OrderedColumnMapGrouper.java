@@ -0,0 +1,57 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.spring.batch.columnmap.ColumnMapMerger;
+import org.springframework.util.ObjectUtils;
+
+import java.util.Map;
+
+/**
+ * For queries that are ordered by the ID column(s). Only the current group is buffered, and it's considered complete as
+ * soon as a column map with a different ID is added. If the rows are not ordered by ID, documents will be written more
+ * than once, with each write overwriting the previous one.
+ */
+public class OrderedColumnMapGrouper implements ColumnMapGrouper {
+
+    private ColumnMapMerger columnMapMerger;
+    private Object currentId;
+    private Map<String, Object> currentColumnMap;
+
+    @Override
+    public void setColumnMapMerger(ColumnMapMerger columnMapMerger) {
+        this.columnMapMerger = columnMapMerger;
+    }
+
+    @Override
+    public void add(Object id, Map<String, Object> columnMap, GroupHandler handler) {
+        if (currentColumnMap != null && ObjectUtils.nullSafeEquals(currentId, id)) {
+            if (columnMapMerger != null) {
+                columnMapMerger.mergeColumnMaps(currentColumnMap, columnMap);
+            }
+        } else {
+            if (currentColumnMap != null) {
+                handler.handleGroup(currentId, currentColumnMap);
+            }
+            currentId = id;
+            currentColumnMap = columnMap;
+        }
+    }
+
+    @Override
+    public void endOfChunk(GroupHandler handler) {
+        // The current group may continue in the next chunk
+    }
+
+    @Override
+    public void endOfInput(GroupHandler handler) {
+        if (currentColumnMap != null) {
+            handler.handleGroup(currentId, currentColumnMap);
+        }
+        currentId = null;
+        currentColumnMap = null;
+    }
+
+    @Override
+    public int getBufferedCount() {
+        return currentColumnMap != null ? 1 : 0;
+    }
+}
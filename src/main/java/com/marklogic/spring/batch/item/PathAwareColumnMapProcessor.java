@@ -1,45 +1,64 @@
 package com.marklogic.spring.batch.item;
 
 import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.spring.batch.jdbc.RowSchema;
+import com.marklogic.spring.batch.jdbc.SchemaRow;
 import org.springframework.batch.item.ItemProcessor;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
- * This processor will "expand" each column that has an XPath-style "/" in its name. This currently only supports one
- * level of nesting. It will combine every column that has the same path before a "/" into a new Map<String, Object>.
- * This allows for a hierarchy of data to be created which can match the XML that will eventually be generated.
+ * This processor will "expand" each column that has an XPath-style "/" in its name, to any depth. It will combine
+ * every column that has the same path before a "/" into a new Map<String, Object>, e.g. "invoice/line/product/name"
+ * produces an "invoice" map containing a "line" map containing a "product" map. This allows for a hierarchy of data to
+ * be created which can match the XML that will eventually be generated.
+ * <p>
+ * The column labels are only parsed once per query, into a PathPlan. For a SchemaRow, the plan is compiled from the
+ * row's schema; for any other map, the plan is reused as long as the keys of the map are the same as the previous
+ * map's. Because of this cached state, each step should have its own instance.
  */
 public class PathAwareColumnMapProcessor extends LoggingObject
         implements ItemProcessor<Map<String, Object>, Map<String, Object>> {
 
+    private RowSchema planSchema;
+    private PathPlan plan;
+
     @Override
     public Map<String, Object> process(Map<String, Object> columnMap) throws Exception {
-        Map<String, Object> newColumnMap = new LinkedHashMap<>();
-        for (String key : columnMap.keySet()) {
-            if (key.contains("/")) {
-                String[] paths = key.split("/");
-                Object o = newColumnMap.get(paths[0]);
-                // TODO Make this work for more than 1 forward slash
-                if (o != null) {
-                    if (o instanceof Map) {
-                        Map<String, Object> map = (Map<String, Object>) o;
-                        map.put(paths[1], columnMap.get(key));
-                    } else {
-                        throw new IllegalStateException(
-                                "The root of a path cannot equal any other column name: " + key);
-                    }
-                } else {
-                    Map<String, Object> map = new LinkedHashMap<>();
-                    map.put(paths[1], columnMap.get(key));
-                    newColumnMap.put(paths[0], map);
-                }
-            } else {
-                newColumnMap.put(key, columnMap.get(key));
+        if (columnMap instanceof SchemaRow) {
+            SchemaRow row = (SchemaRow) columnMap;
+            RowSchema schema = row.getSchema();
+            if (plan == null || schema != planSchema) {
+                plan = compilePlan(schema);
+                planSchema = schema;
+            }
+            return plan.build(row.getValues());
+        }
+
+        Object[] values = new Object[columnMap.size()];
+        boolean planMatches = plan != null && planSchema == null && plan.getLabels().length == values.length;
+        int i = 0;
+        for (Map.Entry<String, Object> entry : columnMap.entrySet()) {
+            if (planMatches && !plan.getLabels()[i].equals(entry.getKey())) {
+                planMatches = false;
             }
+            values[i++] = entry.getValue();
+        }
+        if (!planMatches) {
+            plan = PathPlan.compile(columnMap.keySet().toArray(new String[values.length]));
+            planSchema = null;
+        }
+        return plan.build(values);
+    }
+
+    private PathPlan compilePlan(RowSchema schema) {
+        String[] labels = new String[schema.size()];
+        String[][] paths = new String[schema.size()][];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = schema.getLabel(i);
+            paths[i] = schema.getPath(i);
         }
-        return newColumnMap;
+        return new PathPlan(labels, paths);
     }
 
 }
@@ -0,0 +1,120 @@
+package com.marklogic.spring.batch.item;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nesting plan compiled from the column labels of a query, where each label has been split on "/" into a path. Each
+ * level of the plan lists its keys in the order they first appear, and each key either refers to the position of a
+ * column's value or to a nested level. Building a nested column map for a row then only requires indexing into the
+ * row's values.
+ */
+public class PathPlan {
+
+    private final String[] labels;
+    private final Level root;
+
+    /**
+     * @param labels the column labels, in order
+     * @param paths  for each label, the label split on "/"
+     */
+    public PathPlan(String[] labels, String[][] paths) {
+        this.labels = labels;
+        Builder rootBuilder = new Builder();
+        for (int i = 0; i < paths.length; i++) {
+            String[] path = paths[i];
+            Builder builder = rootBuilder;
+            for (int j = 0; j < path.length - 1; j++) {
+                builder = builder.child(path[j], labels[i]);
+            }
+            builder.value(path[path.length - 1], i, labels[i]);
+        }
+        this.root = rootBuilder.build();
+    }
+
+    public static PathPlan compile(String[] labels) {
+        String[][] paths = new String[labels.length][];
+        for (int i = 0; i < labels.length; i++) {
+            paths[i] = labels[i].split("/");
+        }
+        return new PathPlan(labels, paths);
+    }
+
+    public String[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param values the values of a row, in the same order as the labels this plan was compiled from
+     */
+    public Map<String, Object> build(Object[] values) {
+        return root.build(values);
+    }
+
+    private static class Level {
+        private String[] keys;
+        private int[] positions;
+        private Level[] children;
+
+        private Map<String, Object> build(Object[] values) {
+            Map<String, Object> map = new LinkedHashMap<>(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (children[i] != null) {
+                    map.put(keys[i], children[i].build(values));
+                } else {
+                    map.put(keys[i], values[positions[i]]);
+                }
+            }
+            return map;
+        }
+    }
+
+    private static class Builder {
+        private List<String> keys = new ArrayList<>();
+        private List<Integer> positions = new ArrayList<>();
+        private List<Builder> children = new ArrayList<>();
+
+        private Builder child(String key, String label) {
+            int index = keys.indexOf(key);
+            if (index < 0) {
+                Builder child = new Builder();
+                keys.add(key);
+                positions.add(-1);
+                children.add(child);
+                return child;
+            }
+            if (children.get(index) == null) {
+                throw new IllegalStateException("The root of a path cannot equal any other column name: " + label);
+            }
+            return children.get(index);
+        }
+
+        private void value(String key, int position, String label) {
+            int index = keys.indexOf(key);
+            if (index < 0) {
+                keys.add(key);
+                positions.add(position);
+                children.add(null);
+            } else if (children.get(index) != null) {
+                throw new IllegalStateException("The root of a path cannot equal any other column name: " + label);
+            } else {
+                positions.set(index, position);
+            }
+        }
+
+        private Level build() {
+            Level level = new Level();
+            int size = keys.size();
+            level.keys = keys.toArray(new String[size]);
+            level.positions = new int[size];
+            level.children = new Level[size];
+            for (int i = 0; i < size; i++) {
+                level.positions[i] = positions.get(i);
+                level.children[i] = children.get(i) != null ? children.get(i).build() : null;
+            }
+            return level;
+        }
+    }
+}
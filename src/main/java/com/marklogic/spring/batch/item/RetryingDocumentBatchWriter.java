@@ -0,0 +1,192 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.FailedRequestException;
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.document.GenericDocumentManager;
+import com.marklogic.client.helper.LoggingObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps a synchronous DocumentBatchWriter so that one bad document doesn't fail the whole step. A set that fails with a
+ * transient error - a server error or an I/O error - is retried with exponential backoff. If it still fails, or fails
+ * with a client error, the set is split in half and each half is written separately, recursively, until the documents
+ * that can't be written are isolated; each of those is retried once more with backoff and then added to the
+ * DeadLetterFile. Every other document in the set is written as usual.
+ * <p>
+ * Only the whole set and single documents are retried with backoff, so isolating a bad document in a set of n
+ * documents takes about 2 log2(n) extra requests. Default metadata operations in a set are kept in every half.
+ * <p>
+ * The wrapped writer must throw from write when a set can't be written, so this can't be used with an asynchronous
+ * writer such as WriteBatcherDocumentBatchWriter.
+ */
+public class RetryingDocumentBatchWriter extends LoggingObject implements DocumentBatchWriter {
+
+    private DocumentBatchWriter delegate;
+    private GenericDocumentManager mgr;
+    private DeadLetterFile deadLetterFile;
+    private int maxRetries = 3;
+    private long initialBackoff = 500;
+    private FailedDocumentHandler failedDocumentHandler;
+    private boolean closed;
+
+    /**
+     * @param delegate       the writer that each set, or part of a set, is written with
+     * @param mgr            used only to create the sets that a failed set is split into
+     * @param deadLetterFile where documents that can't be written are added
+     */
+    public RetryingDocumentBatchWriter(DocumentBatchWriter delegate, GenericDocumentManager mgr, DeadLetterFile deadLetterFile) {
+        this.delegate = delegate;
+        this.mgr = mgr;
+        this.deadLetterFile = deadLetterFile;
+        deadLetterFile.retain();
+    }
+
+    @Override
+    public void write(DocumentWriteSet set) {
+        List<DocumentWriteOperation> defaults = new ArrayList<>();
+        List<DocumentWriteOperation> documents = new ArrayList<>();
+        for (DocumentWriteOperation op : set) {
+            if (op.getOperationType() == DocumentWriteOperation.OperationType.DOCUMENT_WRITE) {
+                documents.add(op);
+            } else {
+                defaults.add(op);
+            }
+        }
+
+        RuntimeException failure = writeWithRetries(set);
+        if (failure == null) {
+            return;
+        }
+        if (documents.size() == 1) {
+            deadLetter(documents.get(0), failure);
+            return;
+        }
+        logger.warn("Unable to write set of " + documents.size() + " documents, splitting it to isolate the documents " +
+                "that can't be written: " + failure.getMessage());
+        int middle = documents.size() / 2;
+        bisect(defaults, documents.subList(0, middle));
+        bisect(defaults, documents.subList(middle, documents.size()));
+    }
+
+    protected void bisect(List<DocumentWriteOperation> defaults, List<DocumentWriteOperation> documents) {
+        DocumentWriteSet set = newSet(defaults, documents);
+        if (documents.size() == 1) {
+            RuntimeException failure = writeWithRetries(set);
+            if (failure != null) {
+                deadLetter(documents.get(0), failure);
+            }
+            return;
+        }
+        try {
+            delegate.write(set);
+        } catch (RuntimeException ex) {
+            int middle = documents.size() / 2;
+            bisect(defaults, documents.subList(0, middle));
+            bisect(defaults, documents.subList(middle, documents.size()));
+        }
+    }
+
+    protected void deadLetter(DocumentWriteOperation op, RuntimeException failure) {
+        deadLetterFile.add(op, failure);
+        if (failedDocumentHandler != null) {
+            failedDocumentHandler.handleFailedDocument(op.getUri());
+        }
+    }
+
+    /**
+     * @return null if the set was written, or else the last failure
+     */
+    protected RuntimeException writeWithRetries(DocumentWriteSet set) {
+        long backoff = initialBackoff;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                delegate.write(set);
+                return null;
+            } catch (RuntimeException ex) {
+                if (attempt >= maxRetries || !isTransient(ex)) {
+                    return ex;
+                }
+                if (logger.isInfoEnabled()) {
+                    logger.info("Retrying write of " + set.size() + " documents in " + backoff + "ms after failure: " + ex.getMessage());
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting to retry write", ie);
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    /**
+     * A server error may be caused by the server being busy; a 4xx error is caused by the request itself, so retrying
+     * it won't help.
+     */
+    protected boolean isTransient(RuntimeException ex) {
+        if (ex instanceof FailedRequestException) {
+            int status = ((FailedRequestException) ex).getServerStatusCode();
+            return status < 400 || status >= 500;
+        }
+        return true;
+    }
+
+    private DocumentWriteSet newSet(List<DocumentWriteOperation> defaults, List<DocumentWriteOperation> documents) {
+        DocumentWriteSet set = mgr.newWriteSet();
+        set.addAll(defaults);
+        set.addAll(documents);
+        return set;
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            delegate.close();
+        } finally {
+            deadLetterFile.release();
+        }
+    }
+
+    /**
+     * @param maxRetries number of times a set is retried after a transient failure; defaults to 3
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param initialBackoff milliseconds before the first retry; doubled for each subsequent retry. Defaults to 500.
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * @param failedDocumentHandler optional; informed of each document that's added to the DeadLetterFile instead of
+     *                              being written
+     */
+    public void setFailedDocumentHandler(FailedDocumentHandler failedDocumentHandler) {
+        this.failedDocumentHandler = failedDocumentHandler;
+    }
+
+    /**
+     * Since a set with a dead-lettered document doesn't fail, this is how the owner of the set learns which documents
+     * weren't written.
+     */
+    public interface FailedDocumentHandler {
+        void handleFailedDocument(String uri);
+    }
+}
@@ -0,0 +1,21 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.io.BytesHandle;
+
+/**
+ * The content of a document written by ColumnMapItemWriter, along with the ID of the rows it was built from, so that a
+ * document that can't be written can be traced back to its source rows.
+ */
+public class SourceKeyBytesHandle extends BytesHandle {
+
+    private Object sourceKey;
+
+    public SourceKeyBytesHandle(byte[] content, Object sourceKey) {
+        super(content);
+        this.sourceKey = sourceKey;
+    }
+
+    public Object getSourceKey() {
+        return sourceKey;
+    }
+}
@@ -0,0 +1,237 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.spring.batch.columnmap.BinaryColumnMapCodec;
+import com.marklogic.spring.batch.columnmap.ColumnMapMerger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * For queries whose rows are not ordered by ID, and whose rows are too large to be kept in memory. Column maps are
+ * grouped in memory until the estimated size of the buffered column maps exceeds the heap budget; the buffered groups
+ * are then written, sorted by ID, to a temporary file. At the end of input, the sorted runs are merged, and groups with
+ * the same ID in different runs are merged via the ColumnMapMerger. No group is complete until the end of input.
+ * <p>
+ * The size of a column map is only an estimate, so the heap budget should be well below the available heap.
+ */
+public class SpillingColumnMapGrouper extends LoggingObject implements ColumnMapGrouper {
+
+    private ColumnMapMerger columnMapMerger;
+    private long heapBudget;
+    private File tempDir;
+    private Comparator<Object> keyComparator = new KeyComparator();
+    private BinaryColumnMapCodec codec = new BinaryColumnMapCodec();
+
+    private TreeMap<Object, Map<String, Object>> buffer;
+    private long bufferedBytes;
+    private List<File> runs = new ArrayList<>();
+
+    /**
+     * @param heapBudget estimated number of bytes of column maps to buffer before spilling them to disk
+     * @param tempDir    directory for the temporary files; if null, the default temporary directory is used
+     */
+    public SpillingColumnMapGrouper(long heapBudget, File tempDir) {
+        this.heapBudget = heapBudget;
+        this.tempDir = tempDir;
+        this.buffer = new TreeMap<>(keyComparator);
+    }
+
+    @Override
+    public void setColumnMapMerger(ColumnMapMerger columnMapMerger) {
+        this.columnMapMerger = columnMapMerger;
+    }
+
+    @Override
+    public void add(Object id, Map<String, Object> columnMap, GroupHandler handler) {
+        Map<String, Object> existingColumnMap = buffer.get(id);
+        if (existingColumnMap != null && columnMapMerger != null) {
+            columnMapMerger.mergeColumnMaps(existingColumnMap, columnMap);
+        } else {
+            buffer.put(id, columnMap);
+        }
+        bufferedBytes += estimateSize(columnMap);
+        if (bufferedBytes > heapBudget) {
+            spill();
+        }
+    }
+
+    @Override
+    public void endOfChunk(GroupHandler handler) {
+        // Groups aren't complete until all the rows have been read
+    }
+
+    @Override
+    public void endOfInput(GroupHandler handler) {
+        try {
+            if (runs.isEmpty()) {
+                for (Map.Entry<Object, Map<String, Object>> entry : buffer.entrySet()) {
+                    handler.handleGroup(entry.getKey(), entry.getValue());
+                }
+            } else {
+                spill();
+                mergeRuns(handler);
+            }
+        } finally {
+            buffer.clear();
+            bufferedBytes = 0;
+            for (File run : runs) {
+                if (!run.delete()) {
+                    logger.warn("Unable to delete temporary file: " + run.getAbsolutePath());
+                }
+            }
+            runs.clear();
+        }
+    }
+
+    protected void spill() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        try {
+            File run = File.createTempFile("rowToDoc-run-", ".bin", tempDir);
+            run.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536))) {
+                for (Map.Entry<Object, Map<String, Object>> entry : buffer.entrySet()) {
+                    codec.writeValue(entry.getKey(), out);
+                    codec.writeColumnMap(entry.getValue(), out);
+                }
+            }
+            runs.add(run);
+            if (logger.isInfoEnabled()) {
+                logger.info("Spilled " + buffer.size() + " groups (about " + bufferedBytes + " bytes) to " + run.getAbsolutePath());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to spill column maps to disk: " + ex.getMessage(), ex);
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * K-way merge of the sorted runs; ties are broken by run order so that rows are merged in the order they were read.
+     */
+    protected void mergeRuns(GroupHandler handler) {
+        PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(), new Comparator<Run>() {
+            @Override
+            public int compare(Run r1, Run r2) {
+                int result = keyComparator.compare(r1.id, r2.id);
+                return result != 0 ? result : r1.index - r2.index;
+            }
+        });
+        List<Run> openRuns = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(i, runs.get(i));
+                openRuns.add(run);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                Object id = run.id;
+                Map<String, Object> columnMap = run.columnMap;
+                advance(run, queue);
+                while (!queue.isEmpty() && keyComparator.compare(queue.peek().id, id) == 0) {
+                    Run next = queue.poll();
+                    if (columnMapMerger != null) {
+                        columnMapMerger.mergeColumnMaps(columnMap, next.columnMap);
+                    } else {
+                        columnMap = next.columnMap;
+                    }
+                    advance(next, queue);
+                }
+                handler.handleGroup(id, columnMap);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to merge column maps from disk: " + ex.getMessage(), ex);
+        } finally {
+            for (Run run : openRuns) {
+                run.close();
+            }
+        }
+    }
+
+    private void advance(Run run, PriorityQueue<Run> queue) throws IOException {
+        if (run.next()) {
+            queue.add(run);
+        }
+    }
+
+    /**
+     * Rough estimate of the heap used by a value, including object headers and references.
+     */
+    protected long estimateSize(Object value) {
+        if (value == null) {
+            return 8;
+        } else if (value instanceof String) {
+            return 48 + ((String) value).length() * 2;
+        } else if (value instanceof byte[]) {
+            return 24 + ((byte[]) value).length;
+        } else if (value instanceof Map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 48 + estimateSize(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            long size = 48;
+            for (Object item : (Collection<?>) value) {
+                size += 8 + estimateSize(item);
+            }
+            return size;
+        }
+        return 32;
+    }
+
+    @Override
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    private class Run {
+        private int index;
+        private DataInputStream in;
+        private Object id;
+        private Map<String, Object> columnMap;
+
+        private Run(int index, File file) throws IOException {
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        }
+
+        private boolean next() throws IOException {
+            try {
+                id = codec.readValue(in);
+            } catch (EOFException ex) {
+                close();
+                return false;
+            }
+            columnMap = codec.readColumnMap(in);
+            return true;
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // Nothing to do, the file is about to be deleted
+            }
+        }
+    }
+}
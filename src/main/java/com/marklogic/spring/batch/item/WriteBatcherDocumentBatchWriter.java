@@ -0,0 +1,97 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.datamovement.DataMovementManager;
+import com.marklogic.client.datamovement.WriteBatch;
+import com.marklogic.client.datamovement.WriteBatchListener;
+import com.marklogic.client.datamovement.WriteBatcher;
+import com.marklogic.client.datamovement.WriteFailureListener;
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.document.ServerTransform;
+import com.marklogic.client.helper.LoggingObject;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands documents off to a Data Movement SDK WriteBatcher, which writes batches on its own thread pool. This allows
+ * the step thread to keep reading and serializing rows while several batches are in flight.
+ * <p>
+ * Because writes are asynchronous, a failure is not seen by the step until the next call to write, flush or close;
+ * each of them will then throw an exception. flush and close send any partial batch and wait for every batch to
+ * finish. ColumnMapItemWriter flushes when the step's chunks are done, so a failed final batch fails the step.
+ */
+public class WriteBatcherDocumentBatchWriter extends LoggingObject implements DocumentBatchWriter {
+
+    private DataMovementManager dataMovementManager;
+    private WriteBatcher writeBatcher;
+    private Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private AtomicLong documentsWritten = new AtomicLong();
+
+    /**
+     * @param client
+     * @param batchSize       number of documents in each batch sent to MarkLogic
+     * @param threadCount     number of threads writing batches
+     * @param serverTransform optional; if not null, each batch is written with this transform
+     */
+    public WriteBatcherDocumentBatchWriter(DatabaseClient client, int batchSize, int threadCount, ServerTransform serverTransform) {
+        this.dataMovementManager = client.newDataMovementManager();
+        this.writeBatcher = dataMovementManager.newWriteBatcher()
+                .withBatchSize(batchSize)
+                .withThreadCount(threadCount)
+                .onBatchSuccess(new WriteBatchListener() {
+                    @Override
+                    public void processEvent(WriteBatch batch) {
+                        documentsWritten.addAndGet(batch.getItems().length);
+                    }
+                })
+                .onBatchFailure(new WriteFailureListener() {
+                    @Override
+                    public void processFailure(WriteBatch batch, Throwable failure) {
+                        logger.error("Unable to write batch of " + batch.getItems().length + " documents: " + failure.getMessage());
+                        failures.add(failure);
+                    }
+                });
+        if (serverTransform != null) {
+            this.writeBatcher.withTransform(serverTransform);
+        }
+        dataMovementManager.startJob(writeBatcher);
+    }
+
+    @Override
+    public void write(DocumentWriteSet set) {
+        throwIfFailed();
+        for (DocumentWriteOperation op : set) {
+            writeBatcher.add(op.getUri(), op.getMetadata(), op.getContent());
+        }
+    }
+
+    @Override
+    public void flush() {
+        writeBatcher.flushAndWait();
+        throwIfFailed();
+    }
+
+    @Override
+    public void close() {
+        try {
+            writeBatcher.flushAndWait();
+        } finally {
+            dataMovementManager.stopJob(writeBatcher);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Finished writing batches; documents written: " + documentsWritten.get());
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() {
+        Throwable failure = failures.peek();
+        if (failure != null) {
+            throw new RuntimeException("Unable to write " + failures.size() + " batch(es) of documents; cause: "
+                    + failure.getMessage(), failure);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.document.DocumentWriteSet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.util.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes documents to a series of zip archives in a directory, each named (prefix)-(sequence).zip. Each document is an
+ * entry named by its URI, followed by an entry with the same name plus .metadata.json for its metadata. A new archive
+ * is started once the content written to the current one exceeds the maximum size, so archives can be copied and
+ * loaded as soon as they're complete.
+ * <p>
+ * Entries are compressed for speed rather than size. An archive is only finished once it reaches the maximum size or
+ * the writer is closed; flush only writes the entries so far to the file. Existing archives are never overwritten: the
+ * sequence continues after the highest one already in the directory for the prefix.
+ * <p>
+ * As an ItemStream, update saves the sequence of the current archive and the number of entries written to it, and
+ * should only be called right after flush. When a restarted step is opened with that checkpoint, the current archive is
+ * rebuilt with just its checkpointed entries and written to again, and any later archives for the prefix - which only
+ * hold documents that will be written again - are deleted.
+ * <p>
+ * A zip archive can't hold two entries with the same name, so when a document's URI has already been written to the
+ * current archive - e.g. when chunk grouping writes a document again because its rows span two chunks - a new archive
+ * is started. The later archive then holds the newer version of the document, so archives should be loaded in
+ * sequence.
+ */
+public class ZipDocumentBatchWriter extends AbstractFileDocumentBatchWriter implements ItemStream {
+
+    public static final String SEQUENCE_KEY = "zipArchiveSequence";
+    public static final String ENTRY_COUNT_KEY = "zipArchiveEntryCount";
+
+    private File dir;
+    private String prefix;
+    private long maxArchiveBytes;
+    private int bufferSize = 1024 * 1024;
+
+    private ZipOutputStream zip;
+    private File currentArchive;
+    private long currentArchiveBytes;
+    private int currentArchiveEntries;
+    private Set<String> currentArchiveNames = new HashSet<>();
+    private int sequence;
+    private boolean sequenceResolved;
+
+    /**
+     * @param dir             directory for the archives; created if it doesn't exist
+     * @param prefix          start of the name of each archive; should be unique for each writer, e.g. the step name
+     * @param maxArchiveBytes number of bytes of content after which a new archive is started
+     */
+    public ZipDocumentBatchWriter(File dir, String prefix, long maxArchiveBytes) {
+        this.dir = dir;
+        this.prefix = prefix;
+        this.maxArchiveBytes = maxArchiveBytes;
+    }
+
+    @Override
+    public void write(DocumentWriteSet set) {
+        try {
+            for (DocumentWriteOperation op : set) {
+                if (op.getOperationType() != DocumentWriteOperation.OperationType.DOCUMENT_WRITE) {
+                    continue;
+                }
+                String name = toRelativePath(op.getUri());
+                if (zip != null && currentArchiveNames.contains(name)) {
+                    if (logger.isInfoEnabled()) {
+                        logger.info("Starting a new archive, as " + name + " was already written to " + currentArchive.getName());
+                    }
+                    closeArchive();
+                }
+                if (zip == null) {
+                    openArchive();
+                }
+                byte[] content = getContent(op);
+                writeEntry(name, content);
+                byte[] metadata = getMetadataSidecar(op);
+                if (metadata != null) {
+                    writeEntry(name + METADATA_SUFFIX, metadata);
+                }
+                documentCount++;
+                byteCount += content.length;
+                currentArchiveBytes += content.length;
+                if (currentArchiveBytes >= maxArchiveBytes) {
+                    closeArchive();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write documents to zip archive " + currentArchive + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    protected void openArchive() throws IOException {
+        resolveSequence();
+        sequence++;
+        createArchive();
+    }
+
+    private void resolveSequence() {
+        if (!sequenceResolved) {
+            sequence = findHighestSequence();
+            sequenceResolved = true;
+        }
+    }
+
+    private void createArchive() throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+        }
+        currentArchive = archiveFile(sequence);
+        FileChannel channel = FileChannel.open(currentArchive.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        zip = new ZipOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), bufferSize));
+        zip.setLevel(Deflater.BEST_SPEED);
+        currentArchiveBytes = 0;
+        currentArchiveEntries = 0;
+        currentArchiveNames.clear();
+    }
+
+    private File archiveFile(int sequence) {
+        return new File(dir, String.format("%s-%05d.zip", prefix, sequence));
+    }
+
+    /**
+     * @return the highest sequence of the archives in the directory for this prefix, or 0 if there are none
+     */
+    protected int findHighestSequence() {
+        Pattern pattern = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)\\.zip");
+        int highest = 0;
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = pattern.matcher(name);
+                if (matcher.matches()) {
+                    highest = Math.max(highest, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        if (highest > 0 && logger.isInfoEnabled()) {
+            logger.info("Found existing archives for " + prefix + "; starting after " + String.format("%s-%05d.zip", prefix, highest));
+        }
+        return highest;
+    }
+
+    protected void writeEntry(String name, byte[] bytes) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(bytes);
+        zip.closeEntry();
+        currentArchiveEntries++;
+        currentArchiveNames.add(name);
+    }
+
+    protected void closeArchive() {
+        if (zip == null) {
+            return;
+        }
+        try {
+            zip.close();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to close zip archive " + currentArchive + ": " + ex.getMessage(), ex);
+        } finally {
+            zip = null;
+            currentArchiveEntries = 0;
+            currentArchiveNames.clear();
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Finished zip archive " + currentArchive.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Writes every entry so far to the file; entries are complete once written, so the archive can be rebuilt from
+     * them on restart.
+     */
+    @Override
+    public void flush() {
+        if (zip != null) {
+            try {
+                zip.flush();
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to flush zip archive " + currentArchive + ": " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (!executionContext.containsKey(SEQUENCE_KEY)) {
+            return;
+        }
+        sequence = executionContext.getInt(SEQUENCE_KEY);
+        sequenceResolved = true;
+        int entryCount = executionContext.getInt(ENTRY_COUNT_KEY);
+        try {
+            deleteArchivesAfter(sequence);
+            if (entryCount > 0) {
+                restoreArchive(entryCount);
+            }
+        } catch (IOException ex) {
+            throw new ItemStreamException("Unable to restore zip archive " + archiveFile(sequence) + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private void deleteArchivesAfter(int lastSequence) throws IOException {
+        int highestSequence = findHighestSequence();
+        for (int i = lastSequence + 1; i <= highestSequence; i++) {
+            File archive = archiveFile(i);
+            if (Files.deleteIfExists(archive.toPath()) && logger.isInfoEnabled()) {
+                logger.info("Deleted zip archive " + archive.getAbsolutePath() + ", as it was started after the last checkpoint");
+            }
+        }
+    }
+
+    /**
+     * Copies the first entryCount entries of the current archive - which is unfinished, as the step failed - into a
+     * new archive with the same name, which further documents are then written to.
+     */
+    private void restoreArchive(int entryCount) throws IOException {
+        File archive = archiveFile(sequence);
+        File partial = new File(dir, archive.getName() + ".partial");
+        Files.move(archive.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        createArchive();
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(partial)))) {
+            for (int i = 0; i < entryCount; i++) {
+                ZipEntry entry = in.getNextEntry();
+                if (entry == null) {
+                    throw new IOException("Expected " + entryCount + " entries, but found only " + i);
+                }
+                byte[] bytes = StreamUtils.copyToByteArray(in);
+                writeEntry(entry.getName(), bytes);
+                if (!entry.getName().endsWith(METADATA_SUFFIX)) {
+                    currentArchiveBytes += bytes.length;
+                }
+            }
+        }
+        zip.flush();
+        Files.delete(partial.toPath());
+        if (logger.isInfoEnabled()) {
+            logger.info("Restored " + entryCount + " entries of zip archive " + archive.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        resolveSequence();
+        executionContext.putInt(SEQUENCE_KEY, sequence);
+        executionContext.putInt(ENTRY_COUNT_KEY, currentArchiveEntries);
+    }
+
+    @Override
+    public void close() {
+        closeArchive();
+        logSummary(dir.getAbsolutePath());
+    }
+
+    /**
+     * @param bufferSize bytes buffered before being written to the archive's file channel; defaults to 1MB
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+}
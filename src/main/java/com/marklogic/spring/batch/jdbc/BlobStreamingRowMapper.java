@@ -0,0 +1,65 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.spring.batch.item.BlobUploader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the value of each binary column to a BlobUploader instead of reading it into memory; the value in the row is
+ * then the URI of the binary document that the blob is written to.
+ */
+public class BlobStreamingRowMapper extends CompiledColumnMapRowMapper {
+
+    private BlobUploader blobUploader;
+    private int[] blobPositions;
+
+    public BlobStreamingRowMapper(BlobUploader blobUploader) {
+        this.blobUploader = blobUploader;
+    }
+
+    @Override
+    public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+        SchemaRow row = (SchemaRow) super.mapRow(rs, rowNum);
+        Object[] values = row.getValues();
+        for (int position : blobPositions) {
+            InputStream in = rs.getBinaryStream(row.getSchema().getColumnIndex(position));
+            if (in != null) {
+                try {
+                    values[position] = blobUploader.upload(in);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Unable to read blob in column: " + row.getSchema().getLabel(position), ex);
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException ex) {
+                        // Nothing to do, the blob has been read
+                    }
+                }
+            }
+        }
+        return row;
+    }
+
+    @Override
+    protected RowSchema compileSchema(ResultSet rs) throws SQLException {
+        RowSchema schema = super.compileSchema(rs);
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < schema.size(); i++) {
+            if (schema.getExtractor(i) == ColumnExtractor.BYTES) {
+                schema.setExtractor(i, ColumnExtractor.NONE);
+                positions.add(i);
+            }
+        }
+        blobPositions = new int[positions.size()];
+        for (int i = 0; i < blobPositions.length; i++) {
+            blobPositions[i] = positions.get(i);
+        }
+        return schema;
+    }
+}
@@ -0,0 +1,47 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import com.marklogic.spring.batch.item.CompositeKey;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+
+import java.util.Map;
+
+/**
+ * Cursor reader that resumes a restarted step after the last group written by a ColumnMapItemWriter. Instead of
+ * re-reading and skipping the rows that were already processed, the key saved by the writer is bound into the query
+ * via a key predicate, so the database only returns the remaining rows. The query must be ordered by the key columns.
+ * <p>
+ * The reader doesn't save its own state, as the row count it would save is meaningless once the query has changed.
+ */
+public class CheckpointedCursorItemReader extends JdbcCursorItemReader<Map<String, Object>> {
+
+    private RowQuery query;
+    private String[] keyColumns;
+
+    /**
+     * @param query      the query to run when the step is started for the first time
+     * @param keyColumns the labels of the columns that the writer's keys consist of, in order
+     */
+    public CheckpointedCursorItemReader(RowQuery query, String[] keyColumns) {
+        this.query = query;
+        this.keyColumns = keyColumns;
+        setSaveState(false);
+        setSql(query.getSql());
+        setPreparedStatementSetter(query.newPreparedStatementSetter());
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (executionContext.containsKey(ColumnMapItemWriter.LAST_WRITTEN_KEY)) {
+            Object key = executionContext.get(ColumnMapItemWriter.LAST_WRITTEN_KEY);
+            Object[] values = key instanceof CompositeKey ? ((CompositeKey) key).getValues() : new Object[]{key};
+            RowQuery resumedQuery = query.copy().whereAfter(keyColumns, values);
+            logger.info("Resuming after key: " + key);
+            setSql(resumedQuery.getSql());
+            setPreparedStatementSetter(resumedQuery.newPreparedStatementSetter());
+        }
+        super.open(executionContext);
+    }
+}
@@ -0,0 +1,142 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Reads the value of a column via the ResultSet method that matches the column's SQL type, so the type only has to be
+ * inspected once per query instead of once per value. The values are of the same types that Spring's
+ * ColumnMapRowMapper produces for those columns.
+ */
+public enum ColumnExtractor {
+
+    STRING {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return rs.getString(index);
+        }
+    },
+    INTEGER {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            int value = rs.getInt(index);
+            return rs.wasNull() ? null : value;
+        }
+    },
+    LONG {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            long value = rs.getLong(index);
+            return rs.wasNull() ? null : value;
+        }
+    },
+    DOUBLE {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            double value = rs.getDouble(index);
+            return rs.wasNull() ? null : value;
+        }
+    },
+    DECIMAL {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return rs.getBigDecimal(index);
+        }
+    },
+    BOOLEAN {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            boolean value = rs.getBoolean(index);
+            return rs.wasNull() ? null : value;
+        }
+    },
+    TIMESTAMP {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return rs.getTimestamp(index);
+        }
+    },
+    DATE {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return rs.getDate(index);
+        }
+    },
+    TIME {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return rs.getTime(index);
+        }
+    },
+    BYTES {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return rs.getBytes(index);
+        }
+    },
+    /**
+     * Leaves the value null, for columns whose values are read some other way, e.g. streamed.
+     */
+    NONE {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return null;
+        }
+    },
+    /**
+     * Falls back to Spring's handling of the value, which e.g. converts Blobs and Clobs.
+     */
+    OBJECT {
+        @Override
+        public Object extract(ResultSet rs, int index) throws SQLException {
+            return JdbcUtils.getResultSetValue(rs, index);
+        }
+    };
+
+    public abstract Object extract(ResultSet rs, int index) throws SQLException;
+
+    public static ColumnExtractor forSqlType(int sqlType) {
+        switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return STRING;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INTEGER;
+            case Types.BIGINT:
+                return LONG;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return DECIMAL;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.DATE:
+                return DATE;
+            case Types.TIME:
+                return TIME;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BYTES;
+            default:
+                return OBJECT;
+        }
+    }
+}
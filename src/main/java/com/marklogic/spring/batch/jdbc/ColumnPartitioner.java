@@ -0,0 +1,158 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.client.helper.LoggingObject;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits the rows of a query into partitions based on a single column. If the column is integral, the MIN/MAX of the
+ * column is used to split the rows into contiguous key ranges. Otherwise, the rows are split via MOD on a hash of the
+ * column; since there's no portable SQL hash function, the name of one (e.g. ORA_HASH) must be provided in that case.
+ * <p>
+ * Each partition is described by an ExecutionContext; use applyTo to add the partition's predicate to a RowQuery. When
+ * rows need to be merged, the partition column should be the ID column, so that all the rows for an ID end up in the
+ * same partition. Rows whose partition column is NULL match neither a range nor a MOD predicate, so they're added to
+ * the first partition.
+ * <p>
+ * Integral values outside the range of a long - e.g. of a NUMERIC(30) column - can't be stored in the partition's
+ * ExecutionContext, so such a column is partitioned via the hash function if one is provided, and rejected otherwise.
+ */
+public class ColumnPartitioner extends LoggingObject implements Partitioner {
+
+    public final static String MIN_VALUE_KEY = "minValue";
+    public final static String MAX_VALUE_KEY = "maxValue";
+    public final static String MODULUS_KEY = "modulus";
+    public final static String REMAINDER_KEY = "remainder";
+    public final static String INCLUDE_NULLS_KEY = "includeNulls";
+
+    private final static BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private final static BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private DataSource dataSource;
+    private String sql;
+    private String column;
+    private String hashFunction;
+
+    public ColumnPartitioner(DataSource dataSource, String sql, String column) {
+        this.dataSource = dataSource;
+        this.sql = sql;
+        this.column = column;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        RowQuery query = new RowQuery(sql);
+        String minMaxSql = "SELECT MIN(" + column + "), MAX(" + column + ") FROM (" + query.stripTerminator(sql) + ") rtd";
+        Object[] minMax = new JdbcTemplate(dataSource).query(minMaxSql, new ResultSetExtractor<Object[]>() {
+            @Override
+            public Object[] extractData(ResultSet rs) throws SQLException {
+                rs.next();
+                return new Object[]{rs.getObject(1), rs.getObject(2)};
+            }
+        });
+
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        if (minMax[0] == null) {
+            logger.info("No rows found for partition column " + column + "; using a single partition");
+            partitions.put("partition0", new ExecutionContext());
+        } else if (isIntegral(minMax[0]) && isIntegral(minMax[1]) && fitsInLong(minMax[0]) && fitsInLong(minMax[1])) {
+            // The range is computed with BigIntegers, as e.g. MAX - MIN of a BIGINT column can overflow a long
+            BigInteger min = toBigInteger(minMax[0]);
+            BigInteger max = toBigInteger(minMax[1]);
+            BigInteger size = max.subtract(min).divide(BigInteger.valueOf(gridSize)).add(BigInteger.ONE);
+            int i = 0;
+            for (BigInteger start = min; start.compareTo(max) <= 0; start = start.add(size), i++) {
+                ExecutionContext context = new ExecutionContext();
+                context.putLong(MIN_VALUE_KEY, start.longValue());
+                context.putLong(MAX_VALUE_KEY, start.add(size).subtract(BigInteger.ONE).min(max).longValue());
+                if (i == 0) {
+                    context.put(INCLUDE_NULLS_KEY, true);
+                }
+                partitions.put("partition" + i, context);
+            }
+        } else {
+            if (hashFunction == null) {
+                if (isIntegral(minMax[0]) && isIntegral(minMax[1])) {
+                    throw new IllegalArgumentException("Partition column " + column + " has values outside the range " +
+                            "of a long; a hash function must be specified for partitioning it");
+                }
+                throw new IllegalArgumentException("Partition column " + column
+                        + " is not an integral column; a hash function must be specified for partitioning it");
+            }
+            for (int i = 0; i < gridSize; i++) {
+                ExecutionContext context = new ExecutionContext();
+                context.putInt(MODULUS_KEY, gridSize);
+                context.putInt(REMAINDER_KEY, i);
+                if (i == 0) {
+                    context.put(INCLUDE_NULLS_KEY, true);
+                }
+                partitions.put("partition" + i, context);
+            }
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Partitioned rows on column " + column + " into " + partitions.size() + " partitions");
+        }
+        return partitions;
+    }
+
+    /**
+     * Adds the predicate for the given partition to the query, and orders the query by the partition column so that
+     * rows for the same ID remain adjacent.
+     */
+    public RowQuery applyTo(ExecutionContext partition, RowQuery query) {
+        return applyTo(partition, query, column);
+    }
+
+    /**
+     * Applies the partition to a query in which the partition column has a different label, e.g. a child query whose
+     * foreign key refers to the partition column.
+     */
+    public RowQuery applyTo(ExecutionContext partition, RowQuery query, String column) {
+        String orNull = partition.containsKey(INCLUDE_NULLS_KEY) ? " OR " + column + " IS NULL" : "";
+        if (partition.containsKey(MIN_VALUE_KEY)) {
+            query.where("(" + column + " >= ? AND " + column + " <= ?)" + orNull,
+                    partition.getLong(MIN_VALUE_KEY), partition.getLong(MAX_VALUE_KEY));
+        } else if (partition.containsKey(MODULUS_KEY)) {
+            query.where("MOD(ABS(" + hashFunction + "(" + column + ")), ?) = ?" + orNull,
+                    partition.getInt(MODULUS_KEY), partition.getInt(REMAINDER_KEY));
+        }
+        return query.orderBy(column);
+    }
+
+    protected boolean isIntegral(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger) {
+            return true;
+        }
+        return value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0;
+    }
+
+    protected boolean fitsInLong(Object value) {
+        BigInteger integer = toBigInteger(value);
+        return integer.compareTo(MIN_LONG) >= 0 && integer.compareTo(MAX_LONG) <= 0;
+    }
+
+    private BigInteger toBigInteger(Object value) {
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toBigInteger();
+        }
+        return BigInteger.valueOf(((Number) value).longValue());
+    }
+
+    public void setHashFunction(String hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+}
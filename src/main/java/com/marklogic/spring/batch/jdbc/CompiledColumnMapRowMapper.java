@@ -0,0 +1,36 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Alternative to Spring's ColumnMapRowMapper that compiles a RowSchema from the first row and then maps each row to a
+ * SchemaRow. This avoids allocating a map and duplicating the column labels for every row. Each reader needs its own
+ * instance, as the schema is specific to a query.
+ */
+public class CompiledColumnMapRowMapper implements RowMapper<Map<String, Object>> {
+
+    private RowSchema schema;
+
+    @Override
+    public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (schema == null) {
+            schema = compileSchema(rs);
+        }
+        return new SchemaRow(schema, schema.readValues(rs));
+    }
+
+    /**
+     * Protected so that subclasses can adjust the schema, e.g. the extractors for certain columns.
+     */
+    protected RowSchema compileSchema(ResultSet rs) throws SQLException {
+        return new RowSchema(rs.getMetaData());
+    }
+
+    public RowSchema getSchema() {
+        return schema;
+    }
+}
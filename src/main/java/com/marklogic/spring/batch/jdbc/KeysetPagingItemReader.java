@@ -0,0 +1,216 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import com.marklogic.spring.batch.item.CompositeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alternative to a JdbcCursorItemReader that reads the rows of a query a page at a time instead of holding one cursor
+ * open for the whole step. Each page is selected with a keyset predicate on the key columns, e.g.
+ * "WHERE (id > ?) ORDER BY id FETCH FIRST 1000 ROWS ONLY", and read with its own short query, so no cursor - and on
+ * most databases, no snapshot or lock - is held between pages, and the database never has to skip the rows of earlier
+ * pages as it would with OFFSET.
+ * <p>
+ * The key doesn't need to be unique; e.g. several rows may be merged into a document with the same ID. When a page is
+ * full, the rows with the same key as its last row may continue on the next page, so they're left for the next page,
+ * which starts after the last key that was read completely. If every row of a page has the same key, all the rows with
+ * that key are read with a separate query. Key columns must not be null.
+ * <p>
+ * A page that fails with a transient error is read again with backoff. As with CheckpointedCursorItemReader, a
+ * restarted step resumes after the last key saved by a ColumnMapItemWriter, and the reader doesn't save its own state.
+ */
+public class KeysetPagingItemReader extends AbstractItemCountingItemStreamItemReader<Map<String, Object>> {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private JdbcTemplate jdbcTemplate;
+    private RowQuery query;
+    private String[] keyColumns;
+    private int pageSize;
+    private String limitClause = "FETCH FIRST %d ROWS ONLY";
+    private RowMapper<Map<String, Object>> rowMapper = new CompiledColumnMapRowMapper();
+    private int maxRetries = 3;
+    private long initialBackoff = 1000;
+
+    private Object[] lastKey;
+    private boolean lastPage;
+    private List<Map<String, Object>> page = Collections.emptyList();
+    private int pageIndex;
+    private long pageCount;
+
+    /**
+     * @param query      the query to read; it's ordered by the key columns
+     * @param keyColumns the labels of the columns to page on, in order
+     * @param pageSize   the maximum number of rows in each page
+     */
+    public KeysetPagingItemReader(DataSource dataSource, RowQuery query, String[] keyColumns, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1");
+        }
+        setName(ClassUtils.getShortName(KeysetPagingItemReader.class));
+        setSaveState(false);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(pageSize);
+        this.query = query;
+        this.keyColumns = keyColumns;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (executionContext.containsKey(ColumnMapItemWriter.LAST_WRITTEN_KEY)) {
+            Object key = executionContext.get(ColumnMapItemWriter.LAST_WRITTEN_KEY);
+            lastKey = key instanceof CompositeKey ? ((CompositeKey) key).getValues() : new Object[]{key};
+            logger.info("Resuming after key: " + key);
+        }
+        super.open(executionContext);
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        lastPage = false;
+        page = Collections.emptyList();
+        pageIndex = 0;
+        pageCount = 0;
+    }
+
+    @Override
+    protected Map<String, Object> doRead() throws Exception {
+        while (pageIndex >= page.size()) {
+            if (lastPage) {
+                return null;
+            }
+            readPage();
+        }
+        return page.get(pageIndex++);
+    }
+
+    protected void readPage() {
+        RowQuery pageQuery = query.copy();
+        if (lastKey != null) {
+            pageQuery.whereAfter(keyColumns, lastKey);
+        }
+        pageQuery.orderBy(StringUtils.arrayToCommaDelimitedString(keyColumns))
+                .limit(String.format(limitClause, pageSize));
+        List<Map<String, Object>> rows = queryWithRetries(pageQuery);
+        pageCount++;
+        pageIndex = 0;
+        if (rows.size() < pageSize) {
+            lastPage = true;
+            page = rows;
+            return;
+        }
+
+        Object[] boundaryKey = getKey(rows.get(rows.size() - 1));
+        int end = rows.size() - 1;
+        while (end > 0 && Arrays.equals(getKey(rows.get(end - 1)), boundaryKey)) {
+            end--;
+        }
+        if (end == 0) {
+            // Every row of the page has the same key, so all the rows with that key are read at once
+            StringBuilder predicate = new StringBuilder();
+            for (int i = 0; i < keyColumns.length; i++) {
+                predicate.append(i == 0 ? "" : " AND ").append(keyColumns[i]).append(" = ?");
+            }
+            page = queryWithRetries(query.copy().where(predicate.toString(), boundaryKey));
+            lastKey = boundaryKey;
+        } else {
+            page = rows.subList(0, end);
+            lastKey = getKey(rows.get(end - 1));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Read page " + pageCount + "; next page starts after key: " + Arrays.toString(lastKey));
+        }
+    }
+
+    /**
+     * Reading a page again is safe, as no state is kept between queries; a query that fails because e.g. the database
+     * is busy or a connection was dropped is retried with backoff.
+     */
+    protected List<Map<String, Object>> queryWithRetries(RowQuery pageQuery) {
+        long backoff = initialBackoff;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return jdbcTemplate.query(pageQuery.getSql(), pageQuery.newPreparedStatementSetter(), rowMapper);
+            } catch (TransientDataAccessException | RecoverableDataAccessException ex) {
+                if (attempt >= maxRetries) {
+                    throw ex;
+                }
+                logger.warn("Retrying page query in " + backoff + "ms after failure: " + ex.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting to retry page query", ie);
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    protected Object[] getKey(Map<String, Object> row) {
+        Object[] key = new Object[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            key[i] = row.get(keyColumns[i]);
+            if (key[i] == null) {
+                throw new IllegalStateException("Key column " + keyColumns[i] + " is null; rows can only be paged " +
+                        "on columns that are never null");
+            }
+        }
+        return key;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (logger.isInfoEnabled()) {
+            logger.info("Read " + pageCount + " pages of up to " + pageSize + " rows");
+        }
+        lastKey = null;
+        page = Collections.emptyList();
+    }
+
+    /**
+     * @param rowMapper defaults to a CompiledColumnMapRowMapper; each reader needs its own instance
+     */
+    public void setRowMapper(RowMapper<Map<String, Object>> rowMapper) {
+        this.rowMapper = rowMapper;
+    }
+
+    /**
+     * @param limitClause appended to each page query after the ordering, with %d replaced by the page size; defaults
+     *                    to the standard "FETCH FIRST %d ROWS ONLY", e.g. "LIMIT %d" for MySQL
+     */
+    public void setLimitClause(String limitClause) {
+        this.limitClause = limitClause;
+    }
+
+    /**
+     * @param maxRetries number of times a page is read again after a transient failure; defaults to 3
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param initialBackoff milliseconds before the first retry; doubled for each subsequent retry. Defaults to 1000.
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+}
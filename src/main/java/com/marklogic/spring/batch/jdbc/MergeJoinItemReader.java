@@ -0,0 +1,171 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.client.helper.LoggingObject;
+import com.marklogic.spring.batch.item.CompositeKey;
+import com.marklogic.spring.batch.item.KeyComparator;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles a document from a parent query and any number of child queries, instead of from a single query that joins
+ * the parent table to its child tables. Each query is read by its own cursor, and the cursors are merged in a single
+ * pass: for each parent row, the child rows with the same key are collected into a list, which is added to the parent's
+ * column map under the child's name. Each parent and child row is therefore read exactly once, rather than parent
+ * columns being repeated for every child row and child rows being multiplied across several one-to-many joins.
+ * <p>
+ * The parent query must return one row per key, and every query must be ordered by its key columns. The keys are
+ * compared via a KeyComparator, so for string keys, the database must order them the same way as Java does, i.e. by
+ * UTF-16 code unit, as with a binary collation. Since a collation that differs would otherwise cause child rows to be
+ * skipped as orphans, a key that's less than the previous key read from the same query fails the read with an
+ * IllegalStateException. Child rows whose key doesn't match any parent row are skipped.
+ */
+public class MergeJoinItemReader extends LoggingObject implements ItemStreamReader<Map<String, Object>> {
+
+    private ItemStreamReader<Map<String, Object>> parentReader;
+    private String[] parentKeyColumns;
+    private List<Child> children = new ArrayList<>();
+    private Comparator<Object> keyComparator = new KeyComparator();
+    private Object lastParentKey;
+
+    /**
+     * @param parentReader     reads the parent rows, ordered by the key columns
+     * @param parentKeyColumns the labels of the parent's key columns
+     */
+    public MergeJoinItemReader(ItemStreamReader<Map<String, Object>> parentReader, String[] parentKeyColumns) {
+        this.parentReader = parentReader;
+        this.parentKeyColumns = parentKeyColumns;
+    }
+
+    /**
+     * @param name       the key that the list of child rows is added to each parent column map under
+     * @param reader     reads the child rows, ordered by the key columns
+     * @param keyColumns the labels of the child's columns that hold the parent's key, in the same order as the parent
+     *                   key columns
+     */
+    public void addChild(String name, ItemStreamReader<Map<String, Object>> reader, String[] keyColumns) {
+        if (keyColumns.length != parentKeyColumns.length) {
+            throw new IllegalArgumentException("Child " + name + " must have " + parentKeyColumns.length + " key column(s)");
+        }
+        children.add(new Child(name, reader, keyColumns));
+    }
+
+    @Override
+    public Map<String, Object> read() throws Exception {
+        Map<String, Object> parent = parentReader.read();
+        if (parent == null) {
+            return null;
+        }
+        Object parentKey = keyOf(parent, parentKeyColumns);
+        checkOrder("parent", lastParentKey, parentKey);
+        lastParentKey = parentKey;
+        Map<String, Object> columnMap = new LinkedHashMap<>(parent);
+        for (Child child : children) {
+            columnMap.put(child.name, child.readRows(parentKey));
+        }
+        return columnMap;
+    }
+
+    private Object keyOf(Map<String, Object> row, String[] keyColumns) {
+        if (keyColumns.length == 1) {
+            return row.get(keyColumns[0]);
+        }
+        Object[] values = new Object[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            values[i] = row.get(keyColumns[i]);
+        }
+        return new CompositeKey(values);
+    }
+
+    private void checkOrder(String name, Object previousKey, Object key) {
+        if (previousKey != null && keyComparator.compare(key, previousKey) < 0) {
+            throw new IllegalStateException("The " + name + " rows are not ordered by key as expected: " + key +
+                    " was read after " + previousKey + "; the database may order keys differently than Java, e.g. " +
+                    "because of its collation");
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        parentReader.open(executionContext);
+        for (Child child : children) {
+            child.reader.open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        parentReader.update(executionContext);
+        for (Child child : children) {
+            child.reader.update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        parentReader.close();
+        for (Child child : children) {
+            child.reader.close();
+            if (child.orphanCount > 0) {
+                logger.warn("Skipped " + child.orphanCount + " " + child.name + " rows that have no parent row");
+            }
+        }
+    }
+
+    private class Child {
+        private String name;
+        private ItemStreamReader<Map<String, Object>> reader;
+        private String[] keyColumns;
+        private Map<String, Object> nextRow;
+        private Object nextKey;
+        private boolean exhausted;
+        private long orphanCount;
+
+        private Child(String name, ItemStreamReader<Map<String, Object>> reader, String[] keyColumns) {
+            this.name = name;
+            this.reader = reader;
+            this.keyColumns = keyColumns;
+        }
+
+        /**
+         * Advances the cursor past every row with a key less than or equal to the parent key, returning the rows whose
+         * key equals the parent key.
+         */
+        private List<Map<String, Object>> readRows(Object parentKey) throws Exception {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            while (peek()) {
+                int result = keyComparator.compare(nextKey, parentKey);
+                if (result > 0) {
+                    break;
+                }
+                if (result == 0) {
+                    rows.add(nextRow);
+                } else {
+                    orphanCount++;
+                }
+                nextRow = null;
+            }
+            return rows;
+        }
+
+        private boolean peek() throws Exception {
+            if (nextRow == null && !exhausted) {
+                nextRow = reader.read();
+                if (nextRow == null) {
+                    exhausted = true;
+                } else {
+                    Object key = keyOf(nextRow, keyColumns);
+                    checkOrder(name, nextKey, key);
+                    nextKey = key;
+                }
+            }
+            return nextRow != null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a pooled DataSource and records how long callers wait for a connection. When the target is a DBCP
+ * BasicDataSource, the number of active and idle connections are reported as well. When the step that this is
+ * registered with finishes, a summary is logged and the pool is closed; connections that are still in use are closed
+ * when they're returned.
+ */
+public class MeteredDataSource extends DelegatingDataSource implements StepExecutionListener {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private AtomicLong connectionCount = new AtomicLong();
+    private AtomicLong totalWaitNanos = new AtomicLong();
+    private AtomicLong maxWaitNanos = new AtomicLong();
+
+    public MeteredDataSource(BasicDataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            recordWait(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            recordWait(System.nanoTime() - start);
+        }
+    }
+
+    private void recordWait(long nanos) {
+        connectionCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = connectionCount.get();
+        return count > 0 ? totalWaitNanos.get() / (count * 1000000.0) : 0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000.0;
+    }
+
+    public int getActiveCount() {
+        return ((BasicDataSource) getTargetDataSource()).getNumActive();
+    }
+
+    public int getIdleCount() {
+        return ((BasicDataSource) getTargetDataSource()).getNumIdle();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (logger.isInfoEnabled()) {
+            logger.info(toString());
+        }
+        try {
+            ((BasicDataSource) getTargetDataSource()).close();
+        } catch (SQLException ex) {
+            logger.warn("Unable to close JDBC pool: " + ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JDBC pool: connections requested: %d; average wait: %.2fms; max wait: %.2fms; active: %d; idle: %d",
+                getConnectionCount(), getAverageWaitMillis(), getMaxWaitMillis(), getActiveCount(), getIdleCount());
+    }
+}
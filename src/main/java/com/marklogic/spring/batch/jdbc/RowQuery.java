@@ -0,0 +1,174 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wraps the user-supplied SQL query so that predicates and an ordering can be added to it without having to parse the
+ * query. When predicates or an ordering are added, the original query is treated as a derived table, e.g.
+ * "SELECT * FROM (original query) rtd WHERE ... ORDER BY ...". Column labels - including labels like "invoice/id" -
+ * are preserved by the outer SELECT, so predicates must refer to the labels of the original query.
+ */
+public class RowQuery {
+
+    private final String sql;
+    private final List<String> predicates = new ArrayList<>();
+    private final List<Object> args = new ArrayList<>();
+    private String orderBy;
+    private String limit;
+
+    public RowQuery(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * @param predicate a SQL predicate with "?" placeholders
+     * @param args      the values for the placeholders in the predicate, in order
+     * @return this object
+     */
+    public RowQuery where(String predicate, Object... args) {
+        predicates.add(predicate);
+        this.args.addAll(Arrays.asList(args));
+        return this;
+    }
+
+    /**
+     * Adds a predicate that selects the rows whose key comes after the given key, in the order of the key columns,
+     * e.g. "(a > ?) OR (a = ? AND b > ?)" for two columns. Combined with an ordering by the key columns, this allows a
+     * query to resume after the last key that was processed.
+     *
+     * @param columns the labels of the key columns
+     * @param values  the values of the key columns, in the same order
+     * @return this object
+     */
+    public RowQuery whereAfter(String[] columns, Object[] values) {
+        if (columns.length != values.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " key values, but got " + values.length);
+        }
+        StringBuilder predicate = new StringBuilder();
+        List<Object> predicateArgs = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                predicate.append(" OR ");
+            }
+            predicate.append("(");
+            for (int j = 0; j < i; j++) {
+                predicate.append(columns[j]).append(" = ? AND ");
+                predicateArgs.add(values[j]);
+            }
+            predicate.append(columns[i]).append(" > ?)");
+            predicateArgs.add(values[i]);
+        }
+        return where(predicate.toString(), predicateArgs.toArray());
+    }
+
+    /**
+     * @return a new query with the same SQL, predicates and ordering, to which further predicates can be added without
+     * affecting this one
+     */
+    public RowQuery copy() {
+        RowQuery copy = new RowQuery(sql);
+        copy.predicates.addAll(predicates);
+        copy.args.addAll(args);
+        copy.orderBy = orderBy;
+        copy.limit = limit;
+        return copy;
+    }
+
+    public RowQuery orderBy(String orderBy) {
+        this.orderBy = orderBy;
+        return this;
+    }
+
+    /**
+     * @param limit a clause that limits the number of rows, e.g. "FETCH FIRST 1000 ROWS ONLY"; appended after the
+     *              ordering, as its syntax varies by database
+     * @return this object
+     */
+    public RowQuery limit(String limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public String getSql() {
+        if (predicates.isEmpty() && orderBy == null && limit == null) {
+            return sql;
+        }
+        StringBuilder sb = new StringBuilder("SELECT * FROM (").append(stripTerminator(sql)).append(") rtd");
+        for (int i = 0; i < predicates.size(); i++) {
+            sb.append(i == 0 ? " WHERE " : " AND ").append("(").append(predicates.get(i)).append(")");
+        }
+        if (orderBy != null) {
+            sb.append(" ORDER BY ").append(orderBy);
+        }
+        if (limit != null) {
+            sb.append(" ").append(limit);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the original query with a predicate that matches no rows, to find out the labels of its columns.
+     */
+    public String[] queryColumnLabels(DataSource dataSource) {
+        String labelSql = "SELECT * FROM (" + stripTerminator(sql) + ") rtd WHERE 1 = 0";
+        return new JdbcTemplate(dataSource).query(labelSql, new ResultSetExtractor<String[]>() {
+            @Override
+            public String[] extractData(ResultSet rs) throws SQLException {
+                ResultSetMetaData metaData = rs.getMetaData();
+                String[] labels = new String[metaData.getColumnCount()];
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+                }
+                return labels;
+            }
+        });
+    }
+
+    /**
+     * Counts the rows of the original query, ignoring any predicates and ordering.
+     */
+    public long countRows(DataSource dataSource) {
+        String countSql = "SELECT COUNT(*) FROM (" + stripTerminator(sql) + ") rtd";
+        return new JdbcTemplate(dataSource).queryForObject(countSql, Long.class);
+    }
+
+    public Object[] getArgs() {
+        return args.toArray();
+    }
+
+    public PreparedStatementSetter newPreparedStatementSetter() {
+        return new ArgumentPreparedStatementSetter(getArgs());
+    }
+
+    public String getOriginalSql() {
+        return sql;
+    }
+
+    /**
+     * The examples pass queries like "SELECT * FROM CUSTOMER;", which are fine on their own but not as a derived table.
+     */
+    protected String stripTerminator(String sql) {
+        String s = sql.trim();
+        while (s.endsWith(";")) {
+            s = s.substring(0, s.length() - 1).trim();
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return getSql();
+    }
+}
@@ -0,0 +1,105 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Describes the columns of a query, compiled once from its ResultSetMetaData and shared by every SchemaRow read from
+ * the query. For each column label, the schema holds the JDBC column index, the label split on "/" into a path, and
+ * the ColumnExtractor for the column's type.
+ * <p>
+ * As with Spring's ColumnMapRowMapper, labels are case-insensitive; when a label occurs more than once, the last
+ * column with that label provides the value, at the position of the first one.
+ */
+public class RowSchema {
+
+    private final String[] labels;
+    private final String[][] paths;
+    private final int[] columnIndexes;
+    private final ColumnExtractor[] extractors;
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    public RowSchema(ResultSetMetaData metaData) throws SQLException {
+        List<String> labelList = new ArrayList<>();
+        List<Integer> indexList = new ArrayList<>();
+        List<ColumnExtractor> extractorList = new ArrayList<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String label = JdbcUtils.lookupColumnName(metaData, i);
+            ColumnExtractor extractor = ColumnExtractor.forSqlType(metaData.getColumnType(i));
+            Integer position = positions.get(label.toLowerCase(Locale.ENGLISH));
+            if (position != null) {
+                indexList.set(position, i);
+                extractorList.set(position, extractor);
+            } else {
+                positions.put(label.toLowerCase(Locale.ENGLISH), labelList.size());
+                labelList.add(label);
+                indexList.add(i);
+                extractorList.add(extractor);
+            }
+        }
+        int size = labelList.size();
+        labels = labelList.toArray(new String[size]);
+        paths = new String[size][];
+        columnIndexes = new int[size];
+        extractors = extractorList.toArray(new ColumnExtractor[size]);
+        for (int i = 0; i < size; i++) {
+            paths[i] = labels[i].split("/");
+            columnIndexes[i] = indexList.get(i);
+            positions.put(labels[i], i);
+        }
+    }
+
+    /**
+     * @return the position of the label in this schema, or -1 if the schema has no such label
+     */
+    public int indexOf(String label) {
+        Integer position = positions.get(label);
+        if (position == null) {
+            position = positions.get(label.toLowerCase(Locale.ENGLISH));
+        }
+        return position != null ? position : -1;
+    }
+
+    public Object[] readValues(ResultSet rs) throws SQLException {
+        Object[] values = new Object[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            values[i] = extractors[i].extract(rs, columnIndexes[i]);
+        }
+        return values;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    public String getLabel(int position) {
+        return labels[position];
+    }
+
+    public String[] getPath(int position) {
+        return paths[position];
+    }
+
+    public int getColumnIndex(int position) {
+        return columnIndexes[position];
+    }
+
+    public ColumnExtractor getExtractor(int position) {
+        return extractors[position];
+    }
+
+    /**
+     * Allows a column to be read differently than its SQL type implies, e.g. to stream a BLOB column.
+     */
+    public void setExtractor(int position, ColumnExtractor extractor) {
+        extractors[position] = extractor;
+    }
+}
@@ -0,0 +1,106 @@
+package com.marklogic.spring.batch.jdbc;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map view of a row, backed by an array of values and the RowSchema shared by every row from the same query. Only the
+ * array of values is allocated per row. Keys are case-insensitive, and iteration follows the order of the columns.
+ * <p>
+ * The values of existing keys can be replaced, but keys cannot be added or removed.
+ */
+public class SchemaRow extends AbstractMap<String, Object> {
+
+    private final RowSchema schema;
+    private final Object[] values;
+
+    public SchemaRow(RowSchema schema, Object[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public RowSchema getSchema() {
+        return schema;
+    }
+
+    public Object getValue(int position) {
+        return values[position];
+    }
+
+    /**
+     * @return the array backing this row, in the order of the schema's labels; it is not copied
+     */
+    public Object[] getValues() {
+        return values;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int position = schema.indexOf((String) key);
+        return position >= 0 ? values[position] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && schema.indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int position = schema.indexOf(key);
+        if (position < 0) {
+            throw new UnsupportedOperationException("Cannot add a key to a row: " + key);
+        }
+        Object oldValue = values[position];
+        values[position] = value;
+        return oldValue;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int position = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (position >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int p = position++;
+                        return new SimpleImmutableEntry<>(schema.getLabel(p), values[p]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,326 @@
+package com.marklogic.spring.batch.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects per-stage metrics for a step: how long each row takes to be read from the JDBC cursor and to be processed,
+ * how long each document takes to be serialized, and how long each set of documents takes to be written, along with
+ * the throughput of rows and documents, the bytes written, the number of groups buffered by the writers, and the
+ * slowest batches.
+ * <p>
+ * Register an instance as a listener on the step - it times reads and processing as an ItemReadListener and
+ * ItemProcessListener - and pass it to each ColumnMapItemWriter. The same instance can be shared by every partition.
+ * While the step runs, the metrics are published as an MBean named
+ * "com.marklogic.spring.batch:type=PipelineMetrics,name=(step name)", and if a log interval is set, a summary line is
+ * logged at that interval. A final summary is always logged when the step finishes.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean, StepExecutionListener,
+        ItemReadListener<Object>, ItemProcessListener<Object, Object> {
+
+    private final static int SLOWEST_BATCH_COUNT = 5;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private long logIntervalSeconds;
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong documentsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong bufferedGroups = new AtomicLong();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram processLatency = new LatencyHistogram();
+    private final LatencyHistogram serializeLatency = new LatencyHistogram();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private final long[] slowestBatchMillis = new long[SLOWEST_BATCH_COUNT];
+    private final String[] slowestBatches = new String[SLOWEST_BATCH_COUNT];
+
+    private final ThreadLocal<Long> readStart = new ThreadLocal<>();
+    private final ThreadLocal<Long> processStart = new ThreadLocal<>();
+
+    private volatile long startTime = System.currentTimeMillis();
+    private ObjectName objectName;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param logIntervalSeconds how often a summary line is logged while the step runs; 0 to only log a summary when
+     *                           the step finishes
+     */
+    public PipelineMetrics(long logIntervalSeconds) {
+        this.logIntervalSeconds = logIntervalSeconds;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        reset();
+        register(stepExecution.getStepName());
+        if (logIntervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "rowToDoc-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    logger.info(getSummary());
+                }
+            }, logIntervalSeconds, logIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        logger.info("Final metrics: " + getSummary());
+        String[] batches = getSlowestBatches();
+        if (batches.length > 0) {
+            logger.info("Slowest batches: " + Arrays.toString(batches));
+        }
+        unregister();
+        return null;
+    }
+
+    protected void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.marklogic.spring.batch:type=PipelineMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception ex) {
+            logger.warn("Unable to register metrics MBean: " + ex.getMessage());
+            objectName = null;
+        }
+    }
+
+    protected void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception ex) {
+                logger.warn("Unable to unregister metrics MBean: " + ex.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void beforeRead() {
+        readStart.set(System.nanoTime());
+    }
+
+    @Override
+    public void afterRead(Object item) {
+        rowsRead.incrementAndGet();
+        Long start = readStart.get();
+        if (start != null) {
+            readLatency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    @Override
+    public void beforeProcess(Object item) {
+        processStart.set(System.nanoTime());
+    }
+
+    @Override
+    public void afterProcess(Object item, Object result) {
+        Long start = processStart.get();
+        if (start != null) {
+            processLatency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void onProcessError(Object item, Exception e) {
+    }
+
+    public void recordSerialization(long nanos) {
+        serializeLatency.recordNanos(nanos);
+    }
+
+    /**
+     * Records a set of documents that was written, keeping track of the slowest ones.
+     */
+    public void recordBatch(int documentCount, long bytes, long millis) {
+        documentsWritten.addAndGet(documentCount);
+        bytesWritten.addAndGet(bytes);
+        batchesWritten.incrementAndGet();
+        batchLatency.record(millis * 1000);
+        if (millis > slowestBatchMillis[SLOWEST_BATCH_COUNT - 1]) {
+            synchronized (slowestBatchMillis) {
+                int position = SLOWEST_BATCH_COUNT - 1;
+                if (millis <= slowestBatchMillis[position]) {
+                    return;
+                }
+                while (position > 0 && millis > slowestBatchMillis[position - 1]) {
+                    slowestBatchMillis[position] = slowestBatchMillis[position - 1];
+                    slowestBatches[position] = slowestBatches[position - 1];
+                    position--;
+                }
+                slowestBatchMillis[position] = millis;
+                slowestBatches[position] = millis + " ms; documents: " + documentCount + "; bytes: " + bytes
+                        + "; at: " + new Date();
+            }
+        }
+    }
+
+    /**
+     * Each writer reports the change in the number of groups it buffers, so that the total across writers is kept.
+     */
+    public void addBufferedGroups(long delta) {
+        bufferedGroups.addAndGet(delta);
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("rows read: %d (%.1f/s); documents written: %d (%.1f/s); bytes written: %d; " +
+                        "buffered groups: %d; read p50/p99: %d/%d us; process p50/p99: %d/%d us; " +
+                        "serialize p50/p99: %d/%d us; batch p50/p99: %d/%d ms",
+                getRowsRead(), getRowsReadPerSecond(), getDocumentsWritten(), getDocumentsWrittenPerSecond(),
+                getBytesWritten(), getBufferedGroups(), getReadLatencyP50(), getReadLatencyP99(),
+                getProcessLatencyP50(), getProcessLatencyP99(), getSerializeLatencyP50(), getSerializeLatencyP99(),
+                getBatchLatencyP50Millis(), getBatchLatencyP99Millis());
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? count * 1000.0 / elapsed : 0;
+    }
+
+    @Override
+    public void reset() {
+        rowsRead.set(0);
+        documentsWritten.set(0);
+        bytesWritten.set(0);
+        batchesWritten.set(0);
+        readLatency.reset();
+        processLatency.reset();
+        serializeLatency.reset();
+        batchLatency.reset();
+        synchronized (slowestBatchMillis) {
+            for (int i = 0; i < SLOWEST_BATCH_COUNT; i++) {
+                slowestBatchMillis[i] = 0;
+                slowestBatches[i] = null;
+            }
+        }
+        startTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    @Override
+    public double getRowsReadPerSecond() {
+        return perSecond(rowsRead.get());
+    }
+
+    @Override
+    public long getDocumentsWritten() {
+        return documentsWritten.get();
+    }
+
+    @Override
+    public double getDocumentsWrittenPerSecond() {
+        return perSecond(documentsWritten.get());
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    @Override
+    public long getBufferedGroups() {
+        return bufferedGroups.get();
+    }
+
+    @Override
+    public long getReadLatencyP50() {
+        return readLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getReadLatencyP99() {
+        return readLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getProcessLatencyP50() {
+        return processLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getProcessLatencyP99() {
+        return processLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getSerializeLatencyP50() {
+        return serializeLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getSerializeLatencyP99() {
+        return serializeLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getBatchLatencyP50Millis() {
+        return batchLatency.getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getBatchLatencyP99Millis() {
+        return batchLatency.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public String[] getSlowestBatches() {
+        synchronized (slowestBatchMillis) {
+            int count = 0;
+            while (count < SLOWEST_BATCH_COUNT && slowestBatches[count] != null) {
+                count++;
+            }
+            String[] batches = new String[count];
+            System.arraycopy(slowestBatches, 0, batches, 0, count);
+            return batches;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.marklogic.spring.batch.metrics;
+
+/**
+ * JMX view of PipelineMetrics. Latencies are in microseconds, except for batches, which are in milliseconds.
+ */
+public interface PipelineMetricsMBean {
+
+    long getRowsRead();
+
+    double getRowsReadPerSecond();
+
+    long getDocumentsWritten();
+
+    double getDocumentsWrittenPerSecond();
+
+    long getBytesWritten();
+
+    long getBatchesWritten();
+
+    long getBufferedGroups();
+
+    long getReadLatencyP50();
+
+    long getReadLatencyP99();
+
+    long getProcessLatencyP50();
+
+    long getProcessLatencyP99();
+
+    long getSerializeLatencyP50();
+
+    long getSerializeLatencyP99();
+
+    long getBatchLatencyP50Millis();
+
+    long getBatchLatencyP99Millis();
+
+    String[] getSlowestBatches();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,46 @@
+package com.marklogic.spring.batch.columnmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class EnvelopeColumnMapTransformerTest extends Assert {
+
+    private EnvelopeColumnMapTransformer transformer = new EnvelopeColumnMapTransformer();
+
+    @Test
+    public void xmlEnvelope() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("source", "crm");
+        transformer.setInstanceProperties(properties);
+
+        String xml = serialize(new DefaultStaxColumnMapSerializer());
+        assertEquals("<es:envelope xmlns:es=\"http://marklogic.com/entity-services\"><es:instance>" +
+                "<es:info><es:title>customer</es:title><es:version>1.0</es:version></es:info>" +
+                "<customer><id>1</id><name>Jane</name></customer><source>crm</source></es:instance>" +
+                "<es:attachments></es:attachments></es:envelope>", xml);
+    }
+
+    @Test
+    public void jsonEnvelopeUsesLocalNames() {
+        transformer.setAttachSource(true);
+        JsonColumnMapSerializer serializer = new JsonColumnMapSerializer();
+        serializer.setWrapInRoot(true);
+
+        assertEquals("{\"envelope\":{\"instance\":{\"info\":{\"title\":\"customer\",\"version\":\"1.0\"}," +
+                        "\"customer\":{\"id\":1,\"name\":\"Jane\"}}," +
+                        "\"attachments\":{\"customer\":{\"id\":1,\"name\":\"Jane\"}}}}",
+                serialize(serializer));
+    }
+
+    private String serialize(ColumnMapSerializer serializer) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("name", "Jane");
+        QName root = QName.valueOf(transformer.getRootName("customer"));
+        return serializer.serializeColumnMap(transformer.transform(row, "customer"), root.getLocalPart(), root.getNamespaceURI());
+    }
+}
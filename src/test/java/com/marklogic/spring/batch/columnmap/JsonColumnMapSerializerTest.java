@@ -0,0 +1,70 @@
+package com.marklogic.spring.batch.columnmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+public class JsonColumnMapSerializerTest extends Assert {
+
+    @Test
+    public void valuesAreWrittenPredictably() throws Exception {
+        Map<String, Object> address = new LinkedHashMap<>();
+        address.put("city", "Springfield");
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("total", new BigDecimal("1E+3"));
+        row.put("born", java.sql.Date.valueOf("1980-02-29"));
+        row.put("active", true);
+        row.put("missing", null);
+        row.put("blob", new byte[]{1, 2, 3});
+        row.put("address", address);
+        row.put("comment", Arrays.asList("a", "b"));
+
+        JsonColumnMapSerializer serializer = new JsonColumnMapSerializer();
+        assertEquals("{\"id\":1,\"total\":1000,\"born\":\"1980-02-29\",\"active\":true,\"missing\":null," +
+                        "\"blob\":\"AQID\",\"address\":{\"city\":\"Springfield\"},\"comment\":[\"a\",\"b\"]}",
+                serializer.serializeColumnMap(row, "customer", null));
+
+        serializer.setWrapInRoot(true);
+        serializer.setBlobMode(JsonColumnMapSerializer.BlobMode.SKIP);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeColumnMap(row, "customer", null, out);
+        assertEquals("{\"customer\":{\"id\":1,\"total\":1000,\"born\":\"1980-02-29\",\"active\":true,\"missing\":null," +
+                "\"address\":{\"city\":\"Springfield\"},\"comment\":[\"a\",\"b\"]}}", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void timestampsIncludeOffset() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        try {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("created", new java.sql.Timestamp(0));
+            assertEquals("{\"created\":\"1970-01-01T00:00:00.000Z\"}",
+                    new JsonColumnMapSerializer().serializeColumnMap(row, "customer", null));
+
+            java.sql.Timestamp precise = new java.sql.Timestamp(0);
+            precise.setNanos(123456700);
+            row.put("created", precise);
+            assertEquals("{\"created\":\"1970-01-01T00:00:00.1234567Z\"}",
+                    new JsonColumnMapSerializer().serializeColumnMap(row, "customer", null));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    public void floatsAreNotWidened() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("ratio", 1.1f);
+        row.put("total", 1.1d);
+        assertEquals("{\"ratio\":1.1,\"total\":1.1}", new JsonColumnMapSerializer().serializeColumnMap(row, "customer", null));
+    }
+}
@@ -62,4 +62,33 @@ public class ProcessAndMergeColumnMapsTest extends Assert {
         assertEquals("Arlington", address.get("city"));
     }
 
+    @Test
+    public void deeplyNestedPaths() throws Exception {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("id", "123");
+        record.put("invoice/id", "1");
+        record.put("invoice/line/product/name", "Widget");
+        record.put("invoice/line/product/price", "9.99");
+        record.put("invoice/line/quantity", "3");
+
+        record = columnMapProcessor.process(record);
+
+        assertEquals("123", record.get("id"));
+        Map<String, Object> invoice = (Map<String, Object>) record.get("invoice");
+        assertEquals("1", invoice.get("id"));
+        Map<String, Object> line = (Map<String, Object>) invoice.get("line");
+        assertEquals("3", line.get("quantity"));
+        Map<String, Object> product = (Map<String, Object>) line.get("product");
+        assertEquals("Widget", product.get("name"));
+        assertEquals("9.99", product.get("price"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pathRootCannotEqualColumnName() throws Exception {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("address", "123 Main St");
+        record.put("address/city", "Falls Church");
+        columnMapProcessor.process(record);
+    }
+
 }
@@ -0,0 +1,136 @@
+package com.marklogic.spring.batch.columnmap;
+
+import com.marklogic.spring.batch.item.PathAwareColumnMapProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the rows of a customer joined to both its invoices and its phone numbers, which produces one row per
+ * combination of invoice and phone number.
+ */
+public class StructuralColumnMapMergerTest extends Assert {
+
+    private PathAwareColumnMapProcessor processor = new PathAwareColumnMapProcessor();
+    private StructuralColumnMapMerger merger = new StructuralColumnMapMerger();
+
+    @Test
+    public void childrenAreMergedByKey() throws Exception {
+        Map<String, Object> customer = null;
+        for (int invoice = 1; invoice <= 3; invoice++) {
+            for (int phone = 1; phone <= 2; phone++) {
+                Map<String, Object> row = processor.process(row(invoice, phone));
+                if (customer == null) {
+                    customer = row;
+                } else {
+                    merger.mergeColumnMaps(customer, row);
+                }
+            }
+        }
+
+        assertEquals("123", customer.get("id"));
+        assertEquals("Jane", customer.get("name"));
+
+        List<Map<String, Object>> invoices = (List<Map<String, Object>>) customer.get("invoice");
+        assertEquals(3, invoices.size());
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> invoice = invoices.get(i);
+            assertEquals(i + 1, invoice.get("id"));
+            assertEquals("Each invoice's fields should stay together", (i + 1) * 10, invoice.get("total"));
+        }
+
+        List<Map<String, Object>> phones = (List<Map<String, Object>>) customer.get("phone");
+        assertEquals(2, phones.size());
+        assertEquals("555-0001", phones.get(0).get("number"));
+        assertEquals("555-0002", phones.get(1).get("number"));
+    }
+
+    @Test
+    public void plainListsAndMissingChildren() {
+        Map<String, Object> target = new LinkedHashMap<>();
+        target.put("id", 1);
+        target.put("tag", new ArrayList<Object>(Arrays.asList("a", "b")));
+        target.put("invoice", child(null, null));
+
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("id", 1);
+        source.put("tag", "a");
+        source.put("invoice", child(7, 70));
+        merger.mergeColumnMaps(target, source);
+
+        source.put("tag", "c");
+        source.put("invoice", child(null, null));
+        merger.mergeColumnMaps(target, source);
+
+        assertEquals(Arrays.asList("a", "b", "c"), target.get("tag"));
+        Map<String, Object> invoice = (Map<String, Object>) target.get("invoice");
+        assertEquals("The empty child from an outer join should be replaced", 7, invoice.get("id"));
+    }
+
+    @Test
+    public void integerValuesAreAppended() {
+        Map<String, Object> target = new LinkedHashMap<>();
+        target.put("code", 5);
+        for (int code : new int[]{7, 5, 1}) {
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("code", code);
+            merger.mergeColumnMaps(target, source);
+        }
+        assertEquals(Arrays.asList(5, 7, 1), target.get("code"));
+    }
+
+    @Test
+    public void mergedColumnMapsAreMergedWithoutNesting() throws Exception {
+        Map<String, Object> first = merge(new int[]{1, 2}, new int[]{1});
+        Map<String, Object> second = merge(new int[]{2, 3}, new int[]{1, 2});
+        merger.mergeColumnMaps(first, second);
+
+        List<Map<String, Object>> invoices = (List<Map<String, Object>>) first.get("invoice");
+        assertEquals(3, invoices.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, invoices.get(i).get("id"));
+            assertEquals((i + 1) * 10, invoices.get(i).get("total"));
+        }
+        List<Map<String, Object>> phones = (List<Map<String, Object>>) first.get("phone");
+        assertEquals(2, phones.size());
+        assertEquals("555-0002", phones.get(1).get("number"));
+        assertEquals("123", first.get("id"));
+    }
+
+    private Map<String, Object> merge(int[] invoices, int[] phones) throws Exception {
+        Map<String, Object> customer = null;
+        for (int invoice : invoices) {
+            for (int phone : phones) {
+                Map<String, Object> row = processor.process(row(invoice, phone));
+                if (customer == null) {
+                    customer = row;
+                } else {
+                    merger.mergeColumnMaps(customer, row);
+                }
+            }
+        }
+        return customer;
+    }
+
+    private Map<String, Object> row(int invoice, int phone) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", "123");
+        row.put("name", "Jane");
+        row.put("invoice/id", invoice);
+        row.put("invoice/total", invoice * 10);
+        row.put("phone/number", "555-000" + phone);
+        return row;
+    }
+
+    private Map<String, Object> child(Integer id, Integer total) {
+        Map<String, Object> child = new LinkedHashMap<>();
+        child.put("id", id);
+        child.put("total", total);
+        return child;
+    }
+}
@@ -0,0 +1,357 @@
+package com.marklogic.spring.batch.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the parts of the MarkLogic REST API that rowToDoc writes to, so that the pipeline can be
+ * run and timed without a MarkLogic server. Supports:
+ * <ul>
+ * <li>POST /v1/documents - a multipart/mixed bulk write; each attachment part is counted as a document</li>
+ * <li>PUT /v1/documents?uri=... - a single document write, as used for binary documents</li>
+ * <li>GET /v1/internal/forestinfo - a single forest on this server, for Data Movement SDK jobs</li>
+ * </ul>
+ * Authentication isn't checked and the transform parameters are ignored, apart from recording the names of the
+ * transforms that were requested. Each request can be delayed by a fixed latency, and a fraction of the requests - or
+ * the next N requests - can be failed with a 500 error, or another status, to exercise error handling.
+ */
+public class FakeMarkLogicServer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private int threads = 16;
+
+    private volatile long latency;
+    private volatile double failureRate;
+    private volatile int failureStatus = 500;
+    private final AtomicInteger requestsToFail = new AtomicInteger();
+    private final Random random = new Random(42);
+    private volatile boolean retainDocuments;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failedRequestCount = new AtomicLong();
+    private final AtomicLong documentCount = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final Map<String, byte[]> documents = new ConcurrentHashMap<>();
+    private final Set<String> transformNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Starts the server on an ephemeral port on the loopback interface.
+     */
+    public void start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to start fake MarkLogic server: " + ex.getMessage(), ex);
+        }
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/v1/documents", new DocumentsHandler());
+        server.createContext("/v1/internal/forestinfo", new ForestInfoHandler());
+        server.start();
+        if (logger.isInfoEnabled()) {
+            logger.info("Started fake MarkLogic server on port " + getPort());
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void reset() {
+        requestCount.set(0);
+        failedRequestCount.set(0);
+        documentCount.set(0);
+        bytesReceived.set(0);
+        requestsToFail.set(0);
+        documents.clear();
+        transformNames.clear();
+    }
+
+    /**
+     * @param threads number of requests handled at once; must be set before the server is started
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param latency milliseconds to wait before responding to each request
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param failureRate fraction of requests, between 0 and 1, that fail with a 500 error
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @param failureStatus the status of failed requests; defaults to 500, as returned by MarkLogic when e.g. a
+     *                      transform fails, while e.g. 503 means that the host is unavailable
+     */
+    public void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    public void failNextRequests(int count) {
+        requestsToFail.set(count);
+    }
+
+    /**
+     * @param retainDocuments if true, the content of each document is kept so that tests can inspect it; off by
+     *                        default so that large loads don't run out of memory
+     */
+    public void setRetainDocuments(boolean retainDocuments) {
+        this.retainDocuments = retainDocuments;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getFailedRequestCount() {
+        return failedRequestCount.get();
+    }
+
+    public long getDocumentCount() {
+        return documentCount.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public Map<String, byte[]> getDocuments() {
+        return documents;
+    }
+
+    public Set<String> getTransformNames() {
+        return transformNames;
+    }
+
+    protected boolean shouldFail() {
+        if (requestsToFail.get() > 0 && requestsToFail.getAndDecrement() > 0) {
+            return true;
+        }
+        if (failureRate > 0) {
+            synchronized (random) {
+                return random.nextDouble() < failureRate;
+            }
+        }
+        return false;
+    }
+
+    private class DocumentsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                requestCount.incrementAndGet();
+                byte[] body = readFully(exchange.getRequestBody());
+                bytesReceived.addAndGet(body.length);
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                if (shouldFail()) {
+                    failedRequestCount.incrementAndGet();
+                    respond(exchange, failureStatus, "{\"errorResponse\":{\"statusCode\":" + failureStatus + ",\"status\":\"Failed\"," +
+                            "\"messageCode\":\"XDMP-FAKE\",\"message\":\"Failure injected by FakeMarkLogicServer\"}}");
+                    return;
+                }
+
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                if (params.containsKey("transform")) {
+                    transformNames.add(params.get("transform"));
+                }
+                String method = exchange.getRequestMethod();
+                if ("POST".equals(method)) {
+                    List<String> uris = writeParts(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+                    StringBuilder json = new StringBuilder("{\"documents\":[");
+                    for (int i = 0; i < uris.size(); i++) {
+                        json.append(i > 0 ? "," : "").append("{\"uri\":\"").append(uris.get(i)).append("\"}");
+                    }
+                    respond(exchange, 200, json.append("]}").toString());
+                } else if ("PUT".equals(method)) {
+                    storeDocument(params.get("uri"), body);
+                    respond(exchange, 204, null);
+                } else {
+                    respond(exchange, 405, null);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class ForestInfoHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                respond(exchange, 200, "[{\"id\":\"1\",\"name\":\"fake-forest\",\"database\":\"fake\"," +
+                        "\"host\":\"localhost\",\"updatesAllowed\":\"all\"}]");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Splits a multipart/mixed body on its boundary. Parts with an attachment disposition hold document content, and
+     * the filename is the document URI; inline parts hold metadata and are ignored.
+     */
+    protected List<String> writeParts(String contentType, byte[] body) {
+        List<String> uris = new ArrayList<>();
+        if (contentType == null || !contentType.contains("boundary=")) {
+            return uris;
+        }
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + 9);
+        if (boundary.startsWith("\"")) {
+            boundary = boundary.substring(1, boundary.indexOf('"', 1));
+        } else if (boundary.indexOf(';') > 0) {
+            boundary = boundary.substring(0, boundary.indexOf(';'));
+        }
+        byte[] delimiter = ("--" + boundary).getBytes(UTF8);
+
+        int start = indexOf(body, delimiter, 0);
+        while (start >= 0) {
+            int headersStart = start + delimiter.length;
+            if (headersStart + 1 < body.length && body[headersStart] == '-' && body[headersStart + 1] == '-') {
+                break;
+            }
+            int next = indexOf(body, delimiter, headersStart);
+            if (next < 0) {
+                break;
+            }
+            int headersEnd = indexOf(body, "\r\n\r\n".getBytes(UTF8), headersStart);
+            if (headersEnd > 0 && headersEnd < next) {
+                String headers = new String(body, headersStart, headersEnd - headersStart, UTF8);
+                String uri = attachmentFilename(headers);
+                if (uri != null) {
+                    int contentStart = headersEnd + 4;
+                    int contentEnd = Math.max(contentStart, next - 2);
+                    byte[] content = new byte[contentEnd - contentStart];
+                    System.arraycopy(body, contentStart, content, 0, content.length);
+                    storeDocument(uri, content);
+                    uris.add(uri);
+                }
+            }
+            start = next;
+        }
+        return uris;
+    }
+
+    private String attachmentFilename(String headers) {
+        for (String line : headers.split("\r\n")) {
+            String lower = line.toLowerCase();
+            if (lower.startsWith("content-disposition:") && lower.contains("attachment")) {
+                int index = lower.indexOf("filename=");
+                if (index < 0) {
+                    return null;
+                }
+                String filename = line.substring(index + 9).trim();
+                if (filename.indexOf(';') > 0) {
+                    filename = filename.substring(0, filename.indexOf(';'));
+                }
+                return filename.startsWith("\"") ? filename.substring(1, filename.length() - 1) : filename;
+            }
+        }
+        return null;
+    }
+
+    private void storeDocument(String uri, byte[] content) {
+        documentCount.incrementAndGet();
+        if (retainDocuments && uri != null) {
+            documents.put(uri, content);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = json.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new ConcurrentHashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                        URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package com.marklogic.spring.batch.config;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Verifies how a manifest is read and that its jobs are ordered from the most rows to the fewest.
+ */
+public class ManifestTest extends Assert {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private EmbeddedDatabase db;
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .addScripts("db/sampledata_ddl.sql", "db/sampledata_insert.sql").build();
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void jobsAreOrderedLargestFirst() throws IOException {
+        Manifest manifest = Manifest.read(writeManifest("{\"jobs\": [" +
+                "{\"sql\": \"SELECT * FROM customer WHERE id < 5\", \"root_local_name\": \"customer\"}," +
+                "{\"sql\": \"SELECT * FROM invoice\", \"root_local_name\": \"invoice\", \"format\": \"json\", \"collections\": [\"invoice\", \"sales\"]}," +
+                "{\"name\": \"big\", \"sql\": \"SELECT * FROM product\", \"root_local_name\": \"product\", \"estimated_rows\": 1000000}," +
+                "{\"sql\": \"SELECT * FROM customer\", \"root_local_name\": \"customer\", \"partition_column\": \"id\"}" +
+                "]}"));
+
+        List<ManifestEntry> jobs = manifest.getJobsLargestFirst(db);
+        assertEquals("big", jobs.get(0).getName());
+        assertEquals("invoice", jobs.get(1).getName());
+        assertEquals("customer-4", jobs.get(2).getName());
+        assertEquals("customer", jobs.get(3).getName());
+        assertEquals(Long.valueOf(5), jobs.get(3).getEstimatedRows());
+
+        ManifestEntry invoice = jobs.get(1);
+        assertEquals("json", invoice.getFormat());
+        assertArrayEquals(new String[]{"invoice", "sales"}, invoice.getCollections());
+        assertEquals("", invoice.getTransformName());
+        assertEquals("id", jobs.get(2).getPartitionColumn());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rootLocalNameIsRequired() throws IOException {
+        Manifest.read(writeManifest("{\"jobs\": [{\"sql\": \"SELECT * FROM customer\"}]}"));
+    }
+
+    private File writeManifest(String json) throws IOException {
+        File file = tempFolder.newFile("manifest.json");
+        Files.write(file.toPath(), json.getBytes("UTF-8"));
+        return file;
+    }
+}
@@ -0,0 +1,225 @@
+package com.marklogic.spring.batch.config;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.helper.DatabaseClientProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs RowToDoc end to end against a generated HSQL table and a FakeMarkLogicServer, so that throughput can be
+ * measured without a MarkLogic server. The number of rows, the server latency and a minimum acceptable throughput can
+ * be set via the system properties throughput.rows, throughput.latency and throughput.minRowsPerSecond; by default,
+ * the rows per second are only logged.
+ * <p>
+ * Unlike the other RowToDoc tests, this doesn't extend AbstractRowToDocTest, whose configuration connects to the
+ * MarkLogic server in job.properties. Each job is run in its own application context with an in-memory job repository,
+ * and the options are passed as both command line properties and job parameters, as the command line runner does.
+ */
+public class RowToDocThroughputTest extends Assert {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static EmbeddedDatabase embeddedDatabase;
+    private static FakeMarkLogicServer server;
+    private static DatabaseClient fakeClient;
+
+    private int rows = Integer.getInteger("throughput.rows", 20000);
+
+    @Before
+    public void setup() {
+        server = new FakeMarkLogicServer();
+        server.setLatency(Long.getLong("throughput.latency", 0L));
+        server.start();
+        fakeClient = DatabaseClientFactory.newClient("localhost", server.getPort(), "admin", "admin",
+                DatabaseClientFactory.Authentication.DIGEST);
+
+        embeddedDatabase = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+        generateOrders(rows);
+    }
+
+    @After
+    public void teardown() {
+        embeddedDatabase.shutdown();
+        embeddedDatabase = null;
+        fakeClient.release();
+        server.stop();
+    }
+
+    @Test
+    public void measureRowsPerSecond() {
+        long start = System.currentTimeMillis();
+        JobExecution execution = runRowToDoc("--threads", "4", "--partition_column", "id", "--write_threads", "4");
+        long duration = Math.max(1, System.currentTimeMillis() - start);
+
+        assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+        assertEquals(rows, server.getDocumentCount());
+        long rowsPerSecond = rows * 1000L / duration;
+        logger.info("Wrote " + rows + " rows in " + duration + "ms (" + rowsPerSecond + " rows/s) in " +
+                server.getRequestCount() + " requests and " + server.getBytesReceived() + " bytes");
+        long minRowsPerSecond = Long.getLong("throughput.minRowsPerSecond", 0L);
+        assertTrue("Throughput of " + rowsPerSecond + " rows/s is below the minimum of " + minRowsPerSecond,
+                rowsPerSecond >= minRowsPerSecond);
+    }
+
+    @Test
+    public void writeSetsAreFormedFromRows() {
+        server.setRetainDocuments(true);
+        JobExecution execution = runRowToDoc("--chunk_size", "100");
+
+        assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+        assertEquals(rows, server.getDocumentCount());
+        assertTrue(server.getRequestCount() >= rows / 100);
+        String doc = new String(server.getDocuments().get("/order/7.json"));
+        assertTrue(doc, doc.contains("\"CUSTOMER\":\"customer7\""));
+    }
+
+    @Test
+    public void envelopePropertiesAreAddedToTheInstance() {
+        server.setRetainDocuments(true);
+        JobExecution execution = runRowToDoc("--client_transform", "envelope", "--envelope_properties", "source,erp");
+
+        assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+        String doc = new String(server.getDocuments().get("/order/7.json"));
+        assertTrue(doc, doc.startsWith("{\"envelope\":"));
+        assertTrue(doc, doc.contains("\"source\":\"erp\""));
+    }
+
+    @Test
+    public void failedRequestFailsTheJob() {
+        server.failNextRequests(1);
+        JobExecution execution = runRowToDoc("--chunk_size", "100");
+
+        assertEquals(BatchStatus.FAILED, execution.getStatus());
+        assertEquals(1, server.getFailedRequestCount());
+        assertTrue("Rows after the failed write set should not have been written", server.getDocumentCount() < rows);
+    }
+
+    @Test
+    public void failedFinalBatchFailsTheJob() {
+        server.failNextRequests(1);
+        // Every row fits in one batch, so the failure is only seen when the writer is flushed at the end of the step
+        JobExecution execution = runRowToDoc("--write_threads", "2", "--write_batch_size", String.valueOf(rows + 1));
+
+        assertEquals(BatchStatus.FAILED, execution.getStatus());
+        assertEquals(1, server.getFailedRequestCount());
+    }
+
+    @Test
+    public void manifestJobsRunInOneStep() throws Exception {
+        File manifest = File.createTempFile("manifest", ".json");
+        manifest.deleteOnExit();
+        Files.write(manifest.toPath(), ("{\"jobs\": [" +
+                "{\"sql\": \"SELECT * FROM orders WHERE MOD(id, 2) = 0\", \"root_local_name\": \"even\", \"format\": \"json\"}," +
+                "{\"sql\": \"SELECT * FROM orders WHERE MOD(id, 2) = 1\", \"root_local_name\": \"odd\", \"partition_column\": \"id\"}" +
+                "]}").getBytes("UTF-8"));
+        server.setRetainDocuments(true);
+        JobExecution execution = runJob("--manifest", manifest.getAbsolutePath(), "--jdbc_username", "sa", "--threads", "3");
+
+        assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+        assertEquals(rows, server.getDocumentCount());
+        assertTrue(server.getDocuments().containsKey("/even/2.json"));
+        assertTrue(server.getDocuments().containsKey("/odd/1.xml"));
+    }
+
+    private JobExecution runRowToDoc(String... extraArgs) {
+        List<String> args = new ArrayList<>();
+        args.add("--sql");
+        args.add("SELECT * FROM orders ORDER BY id");
+        args.add("--jdbc_username");
+        args.add("sa");
+        args.add("--format");
+        args.add("json");
+        args.add("--root_local_name");
+        args.add("order");
+        args.add("--collections");
+        args.add("order");
+        for (String arg : extraArgs) {
+            args.add(arg);
+        }
+        return runJob(args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * @param args option names and values, e.g. "--sql", "SELECT ..."
+     */
+    private JobExecution runJob(String... args) {
+        List<String> commandLineArgs = new ArrayList<>();
+        JobParametersBuilder parameters = new JobParametersBuilder();
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].substring(2);
+            commandLineArgs.add("--" + name + "=" + args[i + 1]);
+            parameters.addString(name, args[i + 1]);
+        }
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(
+                new SimpleCommandLinePropertySource(commandLineArgs.toArray(new String[commandLineArgs.size()])));
+        context.register(FakeServerRowToDoc.class);
+        context.refresh();
+        try {
+            return context.getBean(JobLauncher.class).run(context.getBean(Job.class), parameters.toJobParameters());
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to run job: " + ex.getMessage(), ex);
+        } finally {
+            context.close();
+        }
+    }
+
+    private void generateOrders(int count) {
+        JdbcTemplate t = new JdbcTemplate(embeddedDatabase);
+        t.execute("CREATE TABLE orders (id INTEGER PRIMARY KEY, customer VARCHAR(50), total DECIMAL(10,2), " +
+                "created TIMESTAMP, notes VARCHAR(500))");
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            batch.add(new Object[]{i, "customer" + i, new BigDecimal(i).movePointLeft(2),
+                    new Timestamp(1000L * i), "Notes for order " + i + " that pad the row to a realistic size"});
+            if (batch.size() == 1000 || i == count) {
+                t.batchUpdate("INSERT INTO orders VALUES (?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @Configuration
+    public static class FakeServerRowToDoc extends RowToDoc {
+        @Override
+        protected DataSource buildDataSource() {
+            return embeddedDatabase;
+        }
+
+        @Bean
+        public DatabaseClientProvider fakeDatabaseClientProvider() {
+            return new DatabaseClientProvider() {
+                @Override
+                public DatabaseClient getDatabaseClient() {
+                    return fakeClient;
+                }
+            };
+        }
+    }
+}
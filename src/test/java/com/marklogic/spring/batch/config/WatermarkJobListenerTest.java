@@ -0,0 +1,79 @@
+package com.marklogic.spring.batch.config;
+
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.MapJobExplorerFactoryBean;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+
+public class WatermarkJobListenerTest extends Assert {
+
+    private JobRepository jobRepository;
+    private WatermarkJobListener listener;
+
+    @Before
+    public void setup() throws Exception {
+        MapJobRepositoryFactoryBean repositoryFactory = new MapJobRepositoryFactoryBean();
+        jobRepository = repositoryFactory.getObject();
+        JobExplorer jobExplorer = new MapJobExplorerFactoryBean(repositoryFactory).getObject();
+        listener = new WatermarkJobListener(jobExplorer, jobRepository);
+    }
+
+    @Test
+    public void highestWatermarkIsCarriedToNextRun() throws Exception {
+        JobExecution first = jobRepository.createJobExecution("rowToDoc", params(1));
+        listener.beforeJob(first);
+        assertFalse(first.getExecutionContext().containsKey(WatermarkJobListener.WATERMARK_KEY));
+        addStep(first, "step1.partition0", 7L);
+        addStep(first, "step1.partition1", 12L);
+        complete(first, BatchStatus.COMPLETED);
+
+        JobExecution second = jobRepository.createJobExecution("rowToDoc", params(2));
+        listener.beforeJob(second);
+        assertEquals(12L, second.getExecutionContext().get(WatermarkJobListener.WATERMARK_KEY));
+
+        // No rows were read, so the previous watermark is kept
+        addStep(second, "step1", null);
+        complete(second, BatchStatus.COMPLETED);
+
+        JobExecution third = jobRepository.createJobExecution("rowToDoc", params(3));
+        addStep(third, "step1", 20L);
+        complete(third, BatchStatus.FAILED);
+
+        JobExecution fourth = jobRepository.createJobExecution("rowToDoc", params(4));
+        listener.beforeJob(fourth);
+        assertEquals("The failed run's watermark should be ignored",
+                12L, fourth.getExecutionContext().get(WatermarkJobListener.WATERMARK_KEY));
+    }
+
+    private JobParameters params(long run) {
+        return new JobParametersBuilder()
+                .addString("sql", "SELECT * FROM customer")
+                .addString("watermark_column", "id")
+                .addLong("run", run)
+                .toJobParameters();
+    }
+
+    private void addStep(JobExecution jobExecution, String stepName, Long watermark) {
+        StepExecution stepExecution = jobExecution.createStepExecution(stepName);
+        jobRepository.add(stepExecution);
+        if (watermark != null) {
+            stepExecution.getExecutionContext().put(ColumnMapItemWriter.WATERMARK_KEY, watermark);
+            jobRepository.updateExecutionContext(stepExecution);
+        }
+    }
+
+    private void complete(JobExecution jobExecution, BatchStatus status) {
+        jobExecution.setStatus(status);
+        jobRepository.update(jobExecution);
+        listener.afterJob(jobExecution);
+    }
+}
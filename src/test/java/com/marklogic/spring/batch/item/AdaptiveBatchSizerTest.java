@@ -0,0 +1,80 @@
+package com.marklogic.spring.batch.item;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveBatchSizerTest extends Assert {
+
+    @Test
+    public void fullBatchesGrowUpToTheMaxBatchSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(0, 0);
+        sizer.setMaxBatchSize(100);
+        sizer.recordBatch(10, 0, 5);
+        assertEquals("Doubled, then averaged with the old size", 15, sizer.getBatchSize());
+
+        for (int i = 0; i < 20; i++) {
+            sizer.recordBatch(sizer.getBatchSize(), 0, 5);
+        }
+        assertEquals(100, sizer.getBatchSize());
+    }
+
+    @Test
+    public void partialBatchesDontGrow() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(0, 0);
+        sizer.recordBatch(3, 0, 5);
+        assertEquals(10, sizer.getBatchSize());
+    }
+
+    @Test
+    public void slowBatchesShrinkTowardsTheTargetLatency() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 0);
+        sizer.setInitialBatchSize(100);
+
+        // 40ms per document, so 25 documents can be written in the target latency
+        sizer.recordBatch(100, 0, 4000);
+        assertEquals(62, sizer.getBatchSize());
+        for (int i = 0; i < 20; i++) {
+            sizer.recordBatch(sizer.getBatchSize(), 0, sizer.getBatchSize() * 40);
+        }
+        assertEquals(25, sizer.getBatchSize());
+    }
+
+    @Test
+    public void fastBatchesAtMostDouble() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 0);
+        sizer.setInitialBatchSize(100);
+        sizer.recordBatch(100, 0, 10);
+        assertEquals(150, sizer.getBatchSize());
+    }
+
+    @Test
+    public void batchesNeverGoBelowTheMinBatchSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 0);
+        sizer.setMinBatchSize(4);
+        for (int i = 0; i < 10; i++) {
+            sizer.recordBatch(sizer.getBatchSize(), 0, 100000);
+        }
+        assertEquals(4, sizer.getBatchSize());
+    }
+
+    @Test
+    public void byteCapIsNotDamped() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(0, 10000);
+        sizer.setInitialBatchSize(100);
+
+        // 1000 bytes per document, so only 10 documents fit in the budget
+        sizer.recordBatch(100, 100000, 10);
+        assertEquals(10, sizer.getBatchSize());
+
+        // Smaller documents let the batch grow again
+        sizer.recordBatch(10, 1000, 10);
+        assertEquals(15, sizer.getBatchSize());
+    }
+
+    @Test
+    public void maxBatchSizeLowersTheCurrentSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(0, 0);
+        sizer.setMaxBatchSize(5);
+        assertEquals(5, sizer.getBatchSize());
+    }
+}
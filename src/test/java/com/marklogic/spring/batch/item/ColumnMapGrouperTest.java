@@ -0,0 +1,76 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.spring.batch.columnmap.DefaultColumnMapMerger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies when each ColumnMapGrouper considers a group to be complete.
+ */
+public class ColumnMapGrouperTest extends Assert {
+
+    private List<Object> ids = new ArrayList<>();
+    private List<Map<String, Object>> groups = new ArrayList<>();
+
+    private ColumnMapGrouper.GroupHandler handler = new ColumnMapGrouper.GroupHandler() {
+        @Override
+        public void handleGroup(Object id, Map<String, Object> columnMap) {
+            ids.add(id);
+            groups.add(columnMap);
+        }
+    };
+
+    @Test
+    public void ordered() {
+        ColumnMapGrouper grouper = new OrderedColumnMapGrouper();
+        grouper.setColumnMapMerger(new DefaultColumnMapMerger());
+
+        grouper.add(1, row(1, "a"), handler);
+        grouper.add(1, row(1, "b"), handler);
+        grouper.endOfChunk(handler);
+        assertTrue("The group may continue in the next chunk", groups.isEmpty());
+
+        grouper.add(1, row(1, "c"), handler);
+        grouper.add(2, row(2, "d"), handler);
+        assertEquals(1, groups.size());
+        assertEquals(1, ids.get(0));
+        assertEquals(3, ((List<?>) groups.get(0).get("comment")).size());
+
+        grouper.endOfInput(handler);
+        assertEquals(2, groups.size());
+        assertEquals(2, ids.get(1));
+        assertEquals("d", groups.get(1).get("comment"));
+    }
+
+    @Test
+    public void chunk() {
+        ColumnMapGrouper grouper = new ChunkColumnMapGrouper();
+        grouper.setColumnMapMerger(new DefaultColumnMapMerger());
+
+        grouper.add(1, row(1, "a"), handler);
+        grouper.add(2, row(2, "b"), handler);
+        grouper.endOfChunk(handler);
+        assertTrue("Groups in the current chunk are not yet complete", groups.isEmpty());
+
+        grouper.add(2, row(2, "c"), handler);
+        grouper.endOfChunk(handler);
+        assertEquals(1, groups.size());
+        assertEquals(1, ids.get(0));
+
+        grouper.endOfInput(handler);
+        assertEquals(2, groups.size());
+        assertEquals(2, ((List<?>) groups.get(1).get("comment")).size());
+    }
+
+    private Map<String, Object> row(int id, String comment) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("comment", comment);
+        return row;
+    }
+}
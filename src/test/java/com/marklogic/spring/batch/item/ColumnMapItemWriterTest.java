@@ -0,0 +1,180 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.io.Format;
+import com.marklogic.spring.batch.columnmap.ColumnMapSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies that a ColumnMapSerializer that only produces Strings - i.e. one that isn't a StreamingColumnMapSerializer
+ * - can still be used by ColumnMapItemWriter, and that a failure to write the final documents fails the step.
+ */
+public class ColumnMapItemWriterTest extends Assert {
+
+    private DatabaseClient client;
+    private List<DocumentWriteOperation> operations = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        // The client never connects, as the sets are collected instead of being written
+        client = DatabaseClientFactory.newClient("localhost", 8000, "admin", "admin", DatabaseClientFactory.Authentication.DIGEST);
+    }
+
+    @After
+    public void teardown() {
+        client.release();
+    }
+
+    @Test
+    public void stringSerializer() throws Exception {
+        ColumnMapItemWriter writer = new ColumnMapItemWriter(client, "customer");
+        writer.setColumnMapSerializer(new ColumnMapSerializer() {
+            @Override
+            public String serializeColumnMap(Map<String, Object> columnMap, String rootLocalName, String rootNamespaceUri) {
+                return "{\"id\":\"" + columnMap.get("ID") + "\u00e9\"}";
+            }
+        });
+        writer.setDocumentBatchWriter(new DocumentBatchWriter() {
+            @Override
+            public void write(DocumentWriteSet set) {
+                operations.addAll(set);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        writer.open(new ExecutionContext());
+        writer.write(Arrays.asList(Collections.<String, Object>singletonMap("ID", 1)));
+        writer.close();
+
+        assertEquals(1, operations.size());
+        DocumentWriteOperation op = operations.get(0);
+        assertEquals("The extension is determined from the content", "/customer/1.json", op.getUri());
+        SourceKeyBytesHandle handle = (SourceKeyBytesHandle) op.getContent();
+        assertEquals(Format.JSON, handle.getFormat());
+        assertEquals("{\"id\":\"1\u00e9\"}", new String(handle.get(), "UTF-8"));
+    }
+
+    @Test
+    public void failedFlushFailsTheStep() throws Exception {
+        ColumnMapItemWriter writer = new ColumnMapItemWriter(client, "customer");
+        writer.setDocumentBatchWriter(new DocumentBatchWriter() {
+            @Override
+            public void write(DocumentWriteSet set) {
+                operations.addAll(set);
+            }
+
+            @Override
+            public void flush() {
+                throw new RuntimeException("Batch failed");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        writer.open(new ExecutionContext());
+        writer.write(Arrays.asList(Collections.<String, Object>singletonMap("ID", 1)));
+
+        StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        writer.afterStep(stepExecution);
+        assertEquals(BatchStatus.FAILED, stepExecution.getStatus());
+        assertEquals("Batch failed", stepExecution.getFailureExceptions().get(0).getMessage());
+        assertEquals("The remaining group should have been written before the flush", 1, operations.size());
+
+        // close neither writes the records again nor throws
+        writer.close();
+        assertEquals(1, operations.size());
+    }
+
+    @Test
+    public void watermarkIsOnlyKeptOnceTheDocumentsAreFlushed() throws Exception {
+        final List<String> flushes = new ArrayList<>();
+        ColumnMapItemWriter writer = new ColumnMapItemWriter(client, "customer");
+        writer.setWatermarkColumnName("updated");
+        writer.setDocumentBatchWriter(new DocumentBatchWriter() {
+            @Override
+            public void write(DocumentWriteSet set) {
+                operations.addAll(set);
+            }
+
+            @Override
+            public void flush() {
+                flushes.add("flush");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        writer.open(new ExecutionContext());
+        Map<String, Object> row = new HashMap<>();
+        row.put("ID", 1);
+        row.put("UPDATED", 5);
+        writer.write(Arrays.asList(row));
+
+        ExecutionContext context = new ExecutionContext();
+        writer.update(context);
+        assertTrue(flushes.isEmpty());
+        assertFalse("The document hasn't been flushed yet", context.containsKey(ColumnMapItemWriter.WATERMARK_KEY));
+
+        StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        writer.afterStep(stepExecution);
+        assertEquals(BatchStatus.COMPLETED, stepExecution.getStatus());
+        assertEquals(1, flushes.size());
+        assertEquals(5, stepExecution.getExecutionContext().get(ColumnMapItemWriter.WATERMARK_KEY));
+    }
+
+    @Test
+    public void legacyUriGeneratorIsStillCalled() throws Exception {
+        ColumnMapItemWriter writer = new ColumnMapItemWriter(client, "customer") {
+            @Override
+            protected String generateUri(String content, Object id) {
+                return "/legacy/" + id + (content.startsWith("<") ? ".xml" : "");
+            }
+        };
+        writer.setDocumentBatchWriter(new DocumentBatchWriter() {
+            @Override
+            public void write(DocumentWriteSet set) {
+                operations.addAll(set);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        writer.open(new ExecutionContext());
+        writer.write(Arrays.asList(Collections.<String, Object>singletonMap("ID", 1)));
+        writer.close();
+
+        assertEquals("/legacy/1.xml", operations.get(0).getUri());
+    }
+}
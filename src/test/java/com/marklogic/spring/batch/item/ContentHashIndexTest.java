@@ -0,0 +1,115 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.document.DocumentWriteSet;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ContentHashIndexTest extends Assert {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void unchangedDocumentsAreSkippedInNextRun() throws Exception {
+        File file = new File(tempFolder.getRoot(), "hashes.idx");
+        int count = 5000;
+
+        ContentHashIndex index = new ContentHashIndex(file);
+        ContentHashIndex.Updates updates = index.newUpdates();
+        for (int i = 0; i < count; i++) {
+            assertFalse(index.isUnchanged("/customer/" + i + ".xml", contentHash("content" + i), updates));
+        }
+        assertEquals(0, index.size());
+        index.apply(updates);
+        assertEquals(count, index.size());
+
+        index = new ContentHashIndex(file);
+        updates = index.newUpdates();
+        for (int i = 0; i < count; i++) {
+            String content = i % 10 == 0 ? "changed" + i : "content" + i;
+            assertEquals(i % 10 != 0, index.isUnchanged("/customer/" + i + ".xml", contentHash(content), updates));
+        }
+        assertFalse(index.isUnchanged("/customer/new.xml", contentHash("new"), updates));
+        assertEquals(count / 10 + 1, updates.size());
+        index.apply(updates);
+        assertEquals(count + 1, index.size());
+    }
+
+    @Test
+    public void updatesAreNotAppliedUntilWritten() {
+        ContentHashIndex index = new ContentHashIndex(new File(tempFolder.getRoot(), "hashes.idx"));
+        ContentHashIndex.Updates updates = index.newUpdates();
+        assertFalse(index.isUnchanged("/customer/1.xml", contentHash("a"), updates));
+        assertFalse("The document hasn't been written yet", index.isUnchanged("/customer/1.xml", contentHash("a"), index.newUpdates()));
+        index.apply(updates);
+        assertTrue(index.isUnchanged("/customer/1.xml", contentHash("a"), index.newUpdates()));
+    }
+
+    @Test
+    public void fileIsClosedWhenEveryUpdatesIsReleased() throws Exception {
+        File file = new File(tempFolder.getRoot(), "hashes.idx");
+        ContentHashIndex index = new ContentHashIndex(file);
+        ContentHashIndex.Updates first = index.newUpdates();
+        ContentHashIndex.Updates second = index.newUpdates();
+        assertFalse(index.isUnchanged("/customer/1.xml", contentHash("a"), first));
+        assertFalse(index.isUnchanged("/customer/2.xml", contentHash("b"), second));
+
+        index.release(first, true);
+        index.release(second, false);
+        assertEquals("Updates that weren't written should be discarded", 1, index.size());
+        assertEquals(1, new ContentHashIndex(file).size());
+    }
+
+    @Test
+    public void hashesAreAppliedDuringTheStep() throws Exception {
+        File file = new File(tempFolder.getRoot(), "hashes.idx");
+        DatabaseClient client = DatabaseClientFactory.newClient("localhost", 8000, "admin", "admin", DatabaseClientFactory.Authentication.DIGEST);
+        try {
+            ColumnMapItemWriter writer = new ColumnMapItemWriter(client, "customer");
+            writer.setContentHashIndex(new ContentHashIndex(file));
+            writer.setContentHashApplyInterval(3);
+            writer.setDocumentBatchWriter(new DocumentBatchWriter() {
+                @Override
+                public void write(DocumentWriteSet set) {
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            ExecutionContext context = new ExecutionContext();
+            writer.open(context);
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                rows.add(Collections.<String, Object>singletonMap("ID", i));
+            }
+            writer.write(rows);
+            writer.update(context);
+            assertEquals("The hashes should be applied without waiting for the end of the step",
+                    5, new ContentHashIndex(file).size());
+            writer.close();
+        } finally {
+            client.release();
+        }
+    }
+
+    private long contentHash(String content) throws Exception {
+        byte[] bytes = content.getBytes("UTF-8");
+        return ContentHashIndex.hash(bytes, 0, bytes.length);
+    }
+}
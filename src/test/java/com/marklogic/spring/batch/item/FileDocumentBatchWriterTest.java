@@ -0,0 +1,168 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.io.BytesHandle;
+import com.marklogic.client.io.DocumentMetadataHandle;
+import com.marklogic.client.io.Format;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Verifies the layout of the files written by the directory and zip sinks.
+ */
+public class FileDocumentBatchWriterTest extends Assert {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private DatabaseClient client;
+    private DocumentMetadataHandle metadata = new DocumentMetadataHandle().withCollections("customer", "imported");
+
+    @Before
+    public void setup() {
+        // No requests are sent; the client is only used for creating sets
+        client = DatabaseClientFactory.newClient("localhost", 8000, "admin", "admin", DatabaseClientFactory.Authentication.DIGEST);
+    }
+
+    @After
+    public void teardown() {
+        client.release();
+    }
+
+    @Test
+    public void directory() throws IOException {
+        File dir = tempFolder.newFolder("out");
+        DirectoryDocumentBatchWriter writer = new DirectoryDocumentBatchWriter(dir);
+        writer.write(newSet(0, 3));
+        writer.close();
+
+        assertEquals("<customer><ID>1</ID></customer>",
+                new String(Files.readAllBytes(new File(dir, "customer/1.xml").toPath()), "UTF-8"));
+        String sidecar = new String(Files.readAllBytes(new File(dir, "customer/1.xml.metadata.json").toPath()), "UTF-8");
+        assertTrue(sidecar, sidecar.contains("\"collections\":[\"customer\",\"imported\"]"));
+    }
+
+    @Test
+    public void zipArchivesRoll() throws IOException {
+        File dir = tempFolder.newFolder("zips");
+        ZipDocumentBatchWriter writer = new ZipDocumentBatchWriter(dir, "step1", 100);
+        writer.write(newSet(0, 5));
+        writer.write(newSet(5, 5));
+        writer.close();
+
+        File[] archives = dir.listFiles();
+        assertEquals("A new archive should be started after every 4 documents of 31 bytes", 3, archives.length);
+        List<String> names = readEntryNames(new File(dir, "step1-00001.zip"));
+        assertEquals("customer/0.xml", names.get(0));
+        assertEquals("customer/0.xml.metadata.json", names.get(1));
+        assertEquals(8, names.size());
+    }
+
+    @Test
+    public void restartedWriterDoesNotOverwriteArchives() throws IOException {
+        File dir = tempFolder.newFolder("zips");
+        ZipDocumentBatchWriter writer = new ZipDocumentBatchWriter(dir, "step1", 1000);
+        writer.write(newSet(0, 2));
+        writer.close();
+
+        writer = new ZipDocumentBatchWriter(dir, "step1", 1000);
+        writer.write(newSet(2, 2));
+        writer.close();
+
+        assertEquals("customer/0.xml", readEntryNames(new File(dir, "step1-00001.zip")).get(0));
+        assertEquals("customer/2.xml", readEntryNames(new File(dir, "step1-00002.zip")).get(0));
+    }
+
+    @Test
+    public void flushDoesNotFinishTheArchive() throws IOException {
+        File dir = tempFolder.newFolder("zips");
+        ZipDocumentBatchWriter writer = new ZipDocumentBatchWriter(dir, "step1", 1000);
+        writer.write(newSet(0, 2));
+        writer.flush();
+        writer.write(newSet(2, 2));
+        writer.close();
+
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(8, readEntryNames(new File(dir, "step1-00001.zip")).size());
+    }
+
+    @Test
+    public void duplicateUriStartsANewArchive() throws IOException {
+        File dir = tempFolder.newFolder("zips");
+        ZipDocumentBatchWriter writer = new ZipDocumentBatchWriter(dir, "step1", 1000);
+        writer.write(newSet(0, 2));
+        writer.write(newSet(1, 2));
+        writer.close();
+
+        assertEquals(4, readEntryNames(new File(dir, "step1-00001.zip")).size());
+        assertEquals("customer/1.xml", readEntryNames(new File(dir, "step1-00002.zip")).get(0));
+    }
+
+    @Test
+    public void restartedStepContinuesFromTheCheckpoint() throws IOException {
+        File dir = tempFolder.newFolder("zips");
+        ExecutionContext context = new ExecutionContext();
+        ZipDocumentBatchWriter writer = new ZipDocumentBatchWriter(dir, "step1", 100);
+        writer.open(context);
+        writer.write(newSet(0, 2));
+        writer.flush();
+        writer.update(context);
+        // Fills the first archive and starts a second one, and then the step fails without closing the writer
+        writer.write(newSet(2, 4));
+        writer.flush();
+
+        writer = new ZipDocumentBatchWriter(dir, "step1", 100);
+        writer.open(context);
+        writer.write(newSet(2, 4));
+        writer.close();
+
+        assertEquals(2, dir.listFiles().length);
+        List<String> names = readEntryNames(new File(dir, "step1-00001.zip"));
+        assertEquals(8, names.size());
+        assertEquals("customer/3.xml.metadata.json", names.get(7));
+        assertEquals("customer/4.xml", readEntryNames(new File(dir, "step1-00002.zip")).get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uriOutsideDirectoryIsRejected() throws IOException {
+        DocumentWriteSet set = client.newDocumentManager().newWriteSet();
+        set.add("/customer/../../etc/passwd", metadata, new BytesHandle("x".getBytes()).withFormat(Format.TEXT));
+        new DirectoryDocumentBatchWriter(tempFolder.newFolder("out")).write(set);
+    }
+
+    private DocumentWriteSet newSet(int start, int count) {
+        DocumentWriteSet set = client.newDocumentManager().newWriteSet();
+        for (int i = start; i < start + count; i++) {
+            byte[] content = ("<customer><ID>" + i + "</ID></customer>").getBytes();
+            set.add("/customer/" + i + ".xml", metadata, new BytesHandle(content).withFormat(Format.XML));
+        }
+        return set;
+    }
+
+    private List<String> readEntryNames(File archive) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+}
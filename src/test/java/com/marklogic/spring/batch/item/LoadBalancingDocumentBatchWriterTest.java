@@ -0,0 +1,142 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.FailedRequestException;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.io.Format;
+import com.marklogic.client.io.StringHandle;
+import com.marklogic.spring.batch.config.FakeMarkLogicServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes sets from several threads to three fake hosts, one of which is unavailable, and verifies that every set ends
+ * up on a healthy host and that the unavailable host is taken out of rotation.
+ */
+public class LoadBalancingDocumentBatchWriterTest extends Assert {
+
+    private List<FakeMarkLogicServer> servers = new ArrayList<>();
+    private LoadBalancingDocumentBatchWriter writer;
+    private DatabaseClient setClient;
+
+    @Before
+    public void setup() {
+        Map<String, DatabaseClient> clients = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            FakeMarkLogicServer server = new FakeMarkLogicServer();
+            server.setLatency(5);
+            server.start();
+            servers.add(server);
+            clients.put("host" + i, DatabaseClientFactory.newClient("localhost", server.getPort(), "admin", "admin",
+                    DatabaseClientFactory.Authentication.DIGEST));
+        }
+        servers.get(1).setFailureRate(1);
+        servers.get(1).setFailureStatus(503);
+        writer = new LoadBalancingDocumentBatchWriter(clients, null);
+        writer.setInitialBackoff(60000);
+        setClient = DatabaseClientFactory.newClient("localhost", servers.get(0).getPort(), "admin", "admin",
+                DatabaseClientFactory.Authentication.DIGEST);
+    }
+
+    @After
+    public void teardown() {
+        writer.close();
+        setClient.release();
+        for (FakeMarkLogicServer server : servers) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void setsAreSpreadAcrossHealthyHosts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 25; i++) {
+                        writer.write(newSet(thread * 100 + i));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(100 * 2, servers.get(0).getDocumentCount() + servers.get(2).getDocumentCount());
+        assertTrue("Both healthy hosts should have been used",
+                servers.get(0).getRequestCount() > 10 && servers.get(2).getRequestCount() > 10);
+        assertTrue("The failing host should have been backed off after its first failures",
+                servers.get(1).getRequestCount() <= 4);
+    }
+
+    @Test
+    public void requestErrorsDontTakeHostsOutOfRotation() {
+        servers.get(1).setFailureRate(0);
+        for (FakeMarkLogicServer server : servers) {
+            server.failNextRequests(1);
+        }
+        try {
+            writer.write(newSet(1));
+            fail("A set that fails with a 500 error shouldn't be retried on another host");
+        } catch (FailedRequestException ex) {
+            assertEquals(500, ex.getServerStatusCode());
+        }
+        long requestCount = 0;
+        for (FakeMarkLogicServer server : servers) {
+            requestCount += server.getRequestCount();
+            server.failNextRequests(0);
+        }
+        assertEquals(1, requestCount);
+
+        // Every host is still in rotation, so the next sets are spread across all of them
+        for (int i = 2; i < 8; i++) {
+            writer.write(newSet(i));
+        }
+        for (FakeMarkLogicServer server : servers) {
+            assertTrue(server.getDocumentCount() > 0);
+        }
+    }
+
+    @Test
+    public void clientsAreReleasedWhenTheLastWriterCloses() {
+        servers.get(1).setFailureRate(0);
+        DocumentBatchWriter first = writer.withTransform(null);
+        DocumentBatchWriter second = writer.withTransform(null);
+        first.close();
+        first.close();
+
+        // The clients are still in use by the second writer
+        for (int i = 0; i < 6; i++) {
+            second.write(newSet(i));
+        }
+        long documentCount = 0;
+        for (FakeMarkLogicServer server : servers) {
+            documentCount += server.getDocumentCount();
+        }
+        assertEquals(12, documentCount);
+        second.close();
+    }
+
+    private DocumentWriteSet newSet(int id) {
+        DocumentWriteSet set = setClient.newDocumentManager().newWriteSet();
+        set.add("/test/" + id + "-a.json", new StringHandle("{\"id\":" + id + "}").withFormat(Format.JSON));
+        set.add("/test/" + id + "-b.json", new StringHandle("{\"id\":" + id + "}").withFormat(Format.JSON));
+        return set;
+    }
+}
@@ -0,0 +1,164 @@
+package com.marklogic.spring.batch.item;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.MarkLogicIOException;
+import com.marklogic.client.document.DocumentWriteOperation;
+import com.marklogic.client.document.DocumentWriteSet;
+import com.marklogic.client.document.GenericDocumentManager;
+import com.marklogic.client.io.Format;
+import com.marklogic.spring.batch.columnmap.JsonColumnMapSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uses a DocumentBatchWriter that rejects any set containing a poison document, and verifies that every other document
+ * is written and the poison documents end up in the dead letter file with their source keys.
+ */
+public class RetryingDocumentBatchWriterTest extends Assert {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private DatabaseClient client;
+    private GenericDocumentManager mgr;
+    private FailingWriter delegate = new FailingWriter();
+    private DeadLetterFile deadLetterFile;
+    private RetryingDocumentBatchWriter writer;
+    private File file;
+
+    @Before
+    public void setup() {
+        // No requests are sent; the client is only used for creating sets
+        client = DatabaseClientFactory.newClient("localhost", 8000, "admin", "admin", DatabaseClientFactory.Authentication.DIGEST);
+        mgr = client.newDocumentManager();
+        file = new File(tempFolder.getRoot(), "dead-letters.json");
+        deadLetterFile = new DeadLetterFile(file);
+        writer = new RetryingDocumentBatchWriter(delegate, mgr, deadLetterFile);
+        writer.setInitialBackoff(1);
+    }
+
+    @After
+    public void teardown() {
+        client.release();
+    }
+
+    @Test
+    public void poisonDocumentsAreIsolated() throws Exception {
+        writer.write(newSet(100, 17, 64));
+        writer.close();
+
+        assertEquals(98, delegate.written.size());
+        assertFalse(delegate.written.contains("/doc/17.json"));
+        assertFalse(delegate.written.contains("/doc/64.json"));
+        assertEquals(2, deadLetterFile.getCount());
+
+        List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+        assertEquals(2, lines.size());
+        JsonNode letter = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("/doc/17.json", letter.get("uri").asText());
+        assertEquals("17", letter.get("sourceKey").asText());
+        assertEquals("{\"id\":17}", letter.get("content").asText());
+        assertTrue(letter.get("error").asText().contains("poison"));
+    }
+
+    @Test
+    public void transientFailuresAreRetried() {
+        delegate.transientFailures = 2;
+        writer.write(newSet(10));
+
+        assertEquals(10, delegate.written.size());
+        assertEquals("Expected 2 failures and then a successful write", 3, delegate.attempts);
+        assertEquals(0, deadLetterFile.getCount());
+    }
+
+    @Test
+    public void deadLetteredDocumentsAreNotRecordedAsWritten() throws Exception {
+        File indexFile = new File(tempFolder.getRoot(), "hashes.idx");
+        ColumnMapItemWriter itemWriter = new ColumnMapItemWriter(client, "doc");
+        itemWriter.setColumnMapSerializer(new JsonColumnMapSerializer());
+        itemWriter.setContentHashIndex(new ContentHashIndex(indexFile));
+        itemWriter.setDocumentBatchWriter(writer);
+        writer.setFailedDocumentHandler(itemWriter);
+        delegate.poisonIds = new int[]{3};
+
+        itemWriter.open(new ExecutionContext());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(Collections.<String, Object>singletonMap("id", i));
+        }
+        itemWriter.write(rows);
+        itemWriter.close();
+        assertEquals(1, deadLetterFile.getCount());
+
+        ContentHashIndex index = new ContentHashIndex(indexFile);
+        assertEquals(4, index.size());
+        assertFalse("The dead-lettered document must be written again by the next run",
+                index.isUnchanged("/doc/3.json", contentHash("{\"id\":3}"), index.newUpdates()));
+        assertTrue(index.isUnchanged("/doc/2.json", contentHash("{\"id\":2}"), index.newUpdates()));
+    }
+
+    private long contentHash(String content) throws Exception {
+        byte[] bytes = content.getBytes("UTF-8");
+        return ContentHashIndex.hash(bytes, 0, bytes.length);
+    }
+
+    private DocumentWriteSet newSet(int count, int... poisonIds) {
+        DocumentWriteSet set = mgr.newWriteSet();
+        for (int i = 0; i < count; i++) {
+            byte[] content = ("{\"id\":" + i + "}").getBytes();
+            set.add("/doc/" + i + ".json", new SourceKeyBytesHandle(content, i).withFormat(Format.JSON));
+        }
+        delegate.poisonIds = poisonIds;
+        return set;
+    }
+
+    private static class FailingWriter implements DocumentBatchWriter {
+        private List<String> written = new ArrayList<>();
+        private int[] poisonIds = new int[0];
+        private int transientFailures;
+        private int attempts;
+
+        @Override
+        public void write(DocumentWriteSet set) {
+            attempts++;
+            if (transientFailures > 0) {
+                transientFailures--;
+                throw new MarkLogicIOException("Read timed out");
+            }
+            for (DocumentWriteOperation op : set) {
+                for (int poisonId : poisonIds) {
+                    if (op.getUri().equals("/doc/" + poisonId + ".json")) {
+                        throw new RuntimeException("Unable to apply transform to poison document " + op.getUri());
+                    }
+                }
+            }
+            for (DocumentWriteOperation op : set) {
+                written.add(op.getUri());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
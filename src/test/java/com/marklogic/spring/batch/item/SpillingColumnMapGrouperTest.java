@@ -0,0 +1,95 @@
+package com.marklogic.spring.batch.item;
+
+import com.marklogic.spring.batch.columnmap.DefaultColumnMapMerger;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uses a tiny heap budget so that every few rows are spilled to disk, and then verifies that rows for the same ID in
+ * different runs are merged into a single group.
+ */
+public class SpillingColumnMapGrouperTest extends Assert {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void unorderedRowsAreMergedAcrossRuns() throws Exception {
+        SpillingColumnMapGrouper grouper = new SpillingColumnMapGrouper(1000, tempFolder.getRoot());
+        grouper.setColumnMapMerger(new DefaultColumnMapMerger());
+
+        final List<Object> ids = new ArrayList<>();
+        final List<Map<String, Object>> groups = new ArrayList<>();
+        ColumnMapGrouper.GroupHandler handler = new ColumnMapGrouper.GroupHandler() {
+            @Override
+            public void handleGroup(Object id, Map<String, Object> columnMap) {
+                ids.add(id);
+                groups.add(columnMap);
+            }
+        };
+
+        for (int i = 0; i < 30; i++) {
+            int id = (i * 7) % 10;
+            grouper.add(id, row(id, "comment" + i), handler);
+            grouper.endOfChunk(handler);
+        }
+        assertTrue(groups.isEmpty());
+        assertTrue("Expected rows to have been spilled", tempFolder.getRoot().listFiles().length > 0);
+
+        grouper.endOfInput(handler);
+        assertEquals(10, groups.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, ids.get(i));
+            Map<String, Object> group = groups.get(i);
+            assertEquals(i, group.get("id"));
+            assertEquals(new BigDecimal("12.50"), group.get("total"));
+            assertEquals(new Timestamp(1000L * i), group.get("created"));
+            assertEquals(3, ((List<?>) group.get("comment")).size());
+        }
+        assertEquals("Temporary files should have been deleted", 0, tempFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void mergedGroupsInDifferentRunsAreNotNested() {
+        SpillingColumnMapGrouper grouper = new SpillingColumnMapGrouper(Long.MAX_VALUE, tempFolder.getRoot());
+        grouper.setColumnMapMerger(new DefaultColumnMapMerger());
+        final List<Map<String, Object>> groups = new ArrayList<>();
+        ColumnMapGrouper.GroupHandler handler = new ColumnMapGrouper.GroupHandler() {
+            @Override
+            public void handleGroup(Object id, Map<String, Object> columnMap) {
+                groups.add(columnMap);
+            }
+        };
+
+        // Each run has two rows for the same ID, so both runs hold a list of comments for it
+        grouper.add(1, row(1, "comment0"), handler);
+        grouper.add(1, row(1, "comment1"), handler);
+        grouper.spill();
+        grouper.add(1, row(1, "comment2"), handler);
+        grouper.add(1, row(1, "comment3"), handler);
+        grouper.endOfInput(handler);
+
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList("comment0", "comment1", "comment2", "comment3"), groups.get(0).get("comment"));
+        assertEquals(1, groups.get(0).get("id"));
+    }
+
+    private Map<String, Object> row(int id, String comment) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("total", new BigDecimal("12.50"));
+        row.put("created", new Timestamp(1000L * id));
+        row.put("comment", comment);
+        return row;
+    }
+}
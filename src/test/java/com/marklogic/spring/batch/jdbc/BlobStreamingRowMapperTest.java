@@ -0,0 +1,96 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.spring.batch.item.BlobUploader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams blobs to an uploader that keeps them in memory instead of writing them to MarkLogic.
+ */
+public class BlobStreamingRowMapperTest extends Assert {
+
+    private EmbeddedDatabase db;
+    private Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+        JdbcTemplate t = new JdbcTemplate(db);
+        t.execute("CREATE TABLE attachment (id INTEGER, name VARCHAR(50), content BLOB)");
+        t.update("INSERT INTO attachment VALUES (?, ?, ?)", 1, "first", new byte[]{1, 2, 3});
+        t.update("INSERT INTO attachment VALUES (?, ?, ?)", 2, "second", new byte[]{4, 5});
+        t.update("INSERT INTO attachment VALUES (?, ?, ?)", 3, "empty", null);
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void blobsAreReplacedWithUris() {
+        BlobUploader uploader = new BlobUploader(null, "/attachment/blobs/", 2) {
+            @Override
+            protected void writeBlob(String uri, File file) {
+                try {
+                    blobs.put(uri, Files.readAllBytes(file.toPath()));
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        uploader.beforeStep(null);
+
+        List<Map<String, Object>> rows = new JdbcTemplate(db).query(
+                "SELECT * FROM attachment ORDER BY id", new BlobStreamingRowMapper(uploader));
+        assertNull(uploader.afterStep(null));
+
+        assertEquals(3, rows.size());
+        String uri = (String) rows.get(0).get("content");
+        assertTrue(uri.startsWith("/attachment/blobs/"));
+        assertTrue(uri.endsWith(".bin"));
+        assertArrayEquals(new byte[]{1, 2, 3}, blobs.get(uri));
+        assertArrayEquals(new byte[]{4, 5}, blobs.get(rows.get(1).get("content")));
+        assertNull(rows.get(2).get("content"));
+        assertEquals("first", rows.get(0).get("name"));
+        assertEquals(2, uploader.getUploadCount());
+    }
+
+    @Test
+    public void failedUploadFailsTheStep() {
+        BlobUploader uploader = new BlobUploader(null, "/attachment/blobs/", 2) {
+            @Override
+            protected void writeBlob(String uri, File file) {
+                throw new RuntimeException("Unable to write " + uri);
+            }
+        };
+        uploader.beforeStep(null);
+        try {
+            new JdbcTemplate(db).query("SELECT * FROM attachment ORDER BY id", new BlobStreamingRowMapper(uploader));
+        } catch (RuntimeException ex) {
+            // The second blob may be rejected if the first upload has already failed
+        }
+
+        StepExecution stepExecution = new StepExecution("step1", new JobExecution(1L));
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        assertEquals(ExitStatus.FAILED, uploader.afterStep(stepExecution));
+        assertEquals("The status must be failed too, or the job can't be restarted", BatchStatus.FAILED, stepExecution.getStatus());
+        assertFalse(stepExecution.getFailureExceptions().isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import com.marklogic.spring.batch.item.CompositeKey;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies that a restarted reader returns exactly the rows after the checkpointed key, for single and composite keys.
+ */
+public class CheckpointedCursorItemReaderTest extends Assert {
+
+    private final static String SQL = "SELECT InvoiceID, Item, Quantity FROM Item";
+
+    private EmbeddedDatabase db;
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .addScripts("db/sampledata_ddl.sql", "db/sampledata_insert.sql").build();
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void compositeKey() throws Exception {
+        List<Map<String, Object>> allRows = new JdbcTemplate(db).queryForList(SQL + " ORDER BY InvoiceID, Item");
+        Map<String, Object> checkpoint = allRows.get(allRows.size() / 2);
+        Object key = new CompositeKey(checkpoint.get("INVOICEID"), checkpoint.get("ITEM"));
+
+        List<Map<String, Object>> rows = read(new String[]{"InvoiceID", "Item"}, key);
+        assertEquals(allRows.subList(allRows.size() / 2 + 1, allRows.size()), rows);
+    }
+
+    @Test
+    public void singleKey() throws Exception {
+        List<Map<String, Object>> allRows = read(new String[]{"InvoiceID"}, null);
+        Object key = allRows.get(10).get("INVOICEID");
+
+        List<Map<String, Object>> rows = read(new String[]{"InvoiceID"}, key);
+        assertFalse(rows.isEmpty());
+        for (Map<String, Object> row : rows) {
+            assertTrue((Integer) row.get("INVOICEID") > (Integer) key);
+        }
+        int expectedCount = 0;
+        for (Map<String, Object> row : allRows) {
+            if ((Integer) row.get("INVOICEID") > (Integer) key) {
+                expectedCount++;
+            }
+        }
+        assertEquals(expectedCount, rows.size());
+    }
+
+    private List<Map<String, Object>> read(String[] keyColumns, Object checkpoint) throws Exception {
+        RowQuery query = new RowQuery(SQL).orderBy("InvoiceID, Item");
+        CheckpointedCursorItemReader reader = new CheckpointedCursorItemReader(query, keyColumns);
+        reader.setDataSource(db);
+        reader.setRowMapper(new CompiledColumnMapRowMapper());
+        ExecutionContext context = new ExecutionContext();
+        if (checkpoint != null) {
+            context.put(ColumnMapItemWriter.LAST_WRITTEN_KEY, checkpoint);
+        }
+        reader.open(context);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try {
+            Map<String, Object> row;
+            while ((row = reader.read()) != null) {
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,127 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Verifies that the partitions produced by ColumnPartitioner cover every row exactly once.
+ */
+public class ColumnPartitionerTest extends Assert {
+
+    private EmbeddedDatabase db;
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .addScripts("db/sampledata_ddl.sql", "db/sampledata_insert.sql").build();
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void integralColumn() {
+        String sql = "SELECT customer.* FROM customer;";
+        ColumnPartitioner partitioner = new ColumnPartitioner(db, sql, "ID");
+        Map<String, ExecutionContext> partitions = partitioner.partition(4);
+        assertEquals(4, partitions.size());
+
+        JdbcTemplate t = new JdbcTemplate(db);
+        int total = 0;
+        for (ExecutionContext partition : partitions.values()) {
+            RowQuery query = partitioner.applyTo(partition, new RowQuery(sql));
+            total += t.queryForList(query.getSql(), query.getArgs()).size();
+        }
+        assertEquals(50, total);
+    }
+
+    @Test
+    public void wideBigintRange() {
+        JdbcTemplate t = new JdbcTemplate(db);
+        t.execute("CREATE TABLE wide (id BIGINT PRIMARY KEY)");
+        long[] ids = {Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE};
+        for (long id : ids) {
+            t.update("INSERT INTO wide VALUES (?)", id);
+        }
+
+        String sql = "SELECT * FROM wide";
+        ColumnPartitioner partitioner = new ColumnPartitioner(db, sql, "ID");
+        Map<String, ExecutionContext> partitions = partitioner.partition(4);
+        assertEquals(4, partitions.size());
+
+        Long previousMax = null;
+        int total = 0;
+        for (ExecutionContext partition : partitions.values()) {
+            long min = partition.getLong(ColumnPartitioner.MIN_VALUE_KEY);
+            long max = partition.getLong(ColumnPartitioner.MAX_VALUE_KEY);
+            assertEquals("Partitions should be contiguous", previousMax != null ? previousMax + 1 : Long.MIN_VALUE, min);
+            assertTrue(min <= max);
+            previousMax = max;
+            RowQuery query = partitioner.applyTo(partition, new RowQuery(sql));
+            total += t.queryForList(query.getSql(), query.getArgs()).size();
+        }
+        assertEquals(Long.MAX_VALUE, (long) previousMax);
+        assertEquals(ids.length, total);
+    }
+
+    @Test
+    public void nonIntegralColumnRequiresHashFunction() {
+        ColumnPartitioner partitioner = new ColumnPartitioner(db, "SELECT * FROM customer", "LASTNAME");
+        try {
+            partitioner.partition(4);
+            fail("Expected an exception because no hash function was set");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("LASTNAME"));
+        }
+    }
+
+    @Test
+    public void nullValuesAreInTheFirstPartition() {
+        JdbcTemplate t = new JdbcTemplate(db);
+        t.execute("CREATE TABLE nullable (name VARCHAR(10), ref INTEGER)");
+        for (int i = 0; i < 10; i++) {
+            t.update("INSERT INTO nullable VALUES (?, ?)", "row" + i, i % 3 == 0 ? null : i);
+        }
+
+        String sql = "SELECT * FROM nullable";
+        ColumnPartitioner partitioner = new ColumnPartitioner(db, sql, "REF");
+        int total = 0;
+        for (ExecutionContext partition : partitioner.partition(3).values()) {
+            RowQuery query = partitioner.applyTo(partition, new RowQuery(sql));
+            total += t.queryForList(query.getSql(), query.getArgs()).size();
+        }
+        assertEquals(10, total);
+    }
+
+    @Test
+    public void valuesOutsideTheRangeOfALongRequireHashFunction() {
+        JdbcTemplate t = new JdbcTemplate(db);
+        t.execute("CREATE TABLE huge (id NUMERIC(30) PRIMARY KEY)");
+        t.update("INSERT INTO huge VALUES (?)", new BigDecimal("1"));
+        t.update("INSERT INTO huge VALUES (?)", new BigDecimal("100000000000000000000000"));
+
+        ColumnPartitioner partitioner = new ColumnPartitioner(db, "SELECT * FROM huge", "ID");
+        try {
+            partitioner.partition(4);
+            fail("Expected an exception because the values don't fit in a long");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("range of a long"));
+        }
+
+        partitioner.setHashFunction("ABS");
+        Map<String, ExecutionContext> partitions = partitioner.partition(4);
+        assertTrue(partitions.get("partition0").containsKey(ColumnPartitioner.MODULUS_KEY));
+    }
+}
@@ -0,0 +1,58 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies that the rows produced by CompiledColumnMapRowMapper look the same as the ones produced by Spring's
+ * ColumnMapRowMapper, and that every row shares the same schema.
+ */
+public class CompiledColumnMapRowMapperTest extends Assert {
+
+    private EmbeddedDatabase db;
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .addScripts("db/sampledata_ddl.sql", "db/sampledata_insert.sql").build();
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void test() {
+        String sql = "SELECT customer.*, invoice.id as \"invoice/id\", invoice.total as \"invoice/total\" " +
+                "FROM invoice LEFT JOIN customer on invoice.customerId = customer.id ORDER BY customer.id, invoice.id";
+        JdbcTemplate t = new JdbcTemplate(db);
+        List<Map<String, Object>> expectedRows = t.query(sql, new ColumnMapRowMapper());
+        List<Map<String, Object>> rows = t.query(sql, new CompiledColumnMapRowMapper());
+
+        assertEquals(expectedRows.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Object> expected = expectedRows.get(i);
+            Map<String, Object> row = rows.get(i);
+            assertEquals(expected, row);
+            assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(row.keySet()));
+            assertEquals(expected.get("id"), row.get("id"));
+            assertEquals(expected.get("invoice/total"), row.get("INVOICE/TOTAL"));
+        }
+
+        RowSchema schema = ((SchemaRow) rows.get(0)).getSchema();
+        assertSame(schema, ((SchemaRow) rows.get(rows.size() - 1)).getSchema());
+        assertArrayEquals(new String[]{"invoice", "id"}, schema.getPath(schema.indexOf("invoice/id")));
+    }
+}
@@ -0,0 +1,87 @@
+package com.marklogic.spring.batch.jdbc;
+
+import com.marklogic.spring.batch.item.ColumnMapItemWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Items have several rows per invoice, so pages regularly end partway through the rows of an invoice; verifies that
+ * every row is read exactly once regardless of the page size.
+ */
+public class KeysetPagingItemReaderTest extends Assert {
+
+    private final static String SQL = "SELECT InvoiceID, Item, Quantity FROM Item";
+
+    private EmbeddedDatabase db;
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .addScripts("db/sampledata_ddl.sql", "db/sampledata_insert.sql").build();
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void everyRowIsReadOnce() throws Exception {
+        List<String> expected = toStrings(new JdbcTemplate(db).queryForList(SQL));
+        for (int pageSize : new int[]{1, 3, 10, 1000}) {
+            List<Map<String, Object>> rows = read(pageSize, null);
+            assertEquals("Page size: " + pageSize, expected, toStrings(rows));
+            for (int i = 1; i < rows.size(); i++) {
+                assertTrue((Integer) rows.get(i - 1).get("INVOICEID") <= (Integer) rows.get(i).get("INVOICEID"));
+            }
+        }
+    }
+
+    @Test
+    public void resumeAfterLastWrittenKey() throws Exception {
+        List<Map<String, Object>> rows = read(7, 20);
+        assertFalse(rows.isEmpty());
+        int expectedCount = new JdbcTemplate(db).queryForObject("SELECT COUNT(*) FROM Item WHERE InvoiceID > 20", Integer.class);
+        assertEquals(expectedCount, rows.size());
+    }
+
+    private List<Map<String, Object>> read(int pageSize, Object checkpoint) throws Exception {
+        KeysetPagingItemReader reader = new KeysetPagingItemReader(db, new RowQuery(SQL), new String[]{"InvoiceID"}, pageSize);
+        ExecutionContext context = new ExecutionContext();
+        if (checkpoint != null) {
+            context.put(ColumnMapItemWriter.LAST_WRITTEN_KEY, checkpoint);
+        }
+        reader.open(context);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try {
+            Map<String, Object> row;
+            while ((row = reader.read()) != null) {
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+    private List<String> toStrings(List<Map<String, Object>> rows) {
+        List<String> strings = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            strings.add(row.get("INVOICEID") + "/" + row.get("ITEM") + "/" + row.get("QUANTITY"));
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+}
@@ -0,0 +1,94 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles customers from separate customer and invoice queries, and verifies that every customer gets exactly the
+ * invoices that a join would have produced.
+ */
+public class MergeJoinItemReaderTest extends Assert {
+
+    private EmbeddedDatabase db;
+
+    @Before
+    public void setup() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .addScripts("db/sampledata_ddl.sql", "db/sampledata_insert.sql").build();
+    }
+
+    @After
+    public void teardown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void test() throws Exception {
+        Map<Object, Long> expectedCounts = new HashMap<>();
+        for (Map<String, Object> row : new JdbcTemplate(db).queryForList(
+                "SELECT customerId, COUNT(*) AS total FROM invoice GROUP BY customerId")) {
+            expectedCounts.put(row.get("CUSTOMERID"), ((Number) row.get("TOTAL")).longValue());
+        }
+
+        String invoiceSql = "SELECT customerId, id, total FROM invoice";
+        assertEquals("CUSTOMERID", new RowQuery(invoiceSql).queryColumnLabels(db)[0]);
+
+        MergeJoinItemReader reader = new MergeJoinItemReader(
+                cursor(new RowQuery("SELECT * FROM customer").orderBy("id")), new String[]{"ID"});
+        reader.addChild("invoice", cursor(new RowQuery(invoiceSql).orderBy("customerId, id")), new String[]{"CUSTOMERID"});
+        reader.open(new ExecutionContext());
+
+        int customerCount = 0;
+        Map<String, Object> customer;
+        while ((customer = reader.read()) != null) {
+            customerCount++;
+            List<Map<String, Object>> invoices = (List<Map<String, Object>>) customer.get("invoice");
+            Long expectedCount = expectedCounts.get(customer.get("ID"));
+            assertEquals(expectedCount != null ? expectedCount.longValue() : 0, invoices.size());
+            for (Map<String, Object> invoice : invoices) {
+                assertEquals(customer.get("ID"), invoice.get("CUSTOMERID"));
+            }
+        }
+        reader.close();
+        assertEquals(50, customerCount);
+    }
+
+    @Test
+    public void outOfOrderChildKeysFailTheRead() throws Exception {
+        MergeJoinItemReader reader = new MergeJoinItemReader(
+                cursor(new RowQuery("SELECT * FROM customer").orderBy("id")), new String[]{"ID"});
+        reader.addChild("invoice", cursor(new RowQuery("SELECT customerId, id FROM invoice").orderBy("customerId DESC")),
+                new String[]{"CUSTOMERID"});
+        reader.open(new ExecutionContext());
+        try {
+            while (reader.read() != null) {
+            }
+            fail("Expected an exception because the invoices are in descending order");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().startsWith("The invoice rows are not ordered by key"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private JdbcCursorItemReader<Map<String, Object>> cursor(RowQuery query) {
+        JdbcCursorItemReader<Map<String, Object>> reader = new JdbcCursorItemReader<>();
+        reader.setDataSource(db);
+        reader.setSql(query.getSql());
+        reader.setRowMapper(new CompiledColumnMapRowMapper());
+        reader.setSaveState(false);
+        return reader;
+    }
+}
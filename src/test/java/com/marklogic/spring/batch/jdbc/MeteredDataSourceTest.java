@@ -0,0 +1,29 @@
+package com.marklogic.spring.batch.jdbc;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+
+public class MeteredDataSourceTest extends Assert {
+
+    @Test
+    public void poolIsClosedWhenTheStepFinishes() throws Exception {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName("org.hsqldb.jdbc.JDBCDriver");
+        pool.setUrl("jdbc:hsqldb:mem:meteredDataSourceTest");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        MeteredDataSource dataSource = new MeteredDataSource(pool);
+
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        assertEquals(1, dataSource.getConnectionCount());
+        assertEquals(1, dataSource.getIdleCount());
+
+        dataSource.afterStep(null);
+        assertTrue(pool.isClosed());
+        assertEquals("The idle connections should have been closed", 0, dataSource.getIdleCount());
+    }
+}
@@ -0,0 +1,48 @@
+package com.marklogic.spring.batch.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipelineMetricsTest extends Assert {
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertWithinBucket(500, histogram.getPercentile(50));
+        assertWithinBucket(990, histogram.getPercentile(99));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void slowestBatchesAreKeptInOrder() {
+        PipelineMetrics metrics = new PipelineMetrics(0);
+        long[] millis = {5, 50, 1, 500, 20, 200, 2, 100};
+        for (long m : millis) {
+            metrics.recordBatch(10, 1000, m);
+        }
+        assertEquals(80, metrics.getDocumentsWritten());
+        assertEquals(8000, metrics.getBytesWritten());
+        assertEquals(8, metrics.getBatchesWritten());
+
+        String[] slowest = metrics.getSlowestBatches();
+        assertEquals(5, slowest.length);
+        assertTrue(slowest[0].startsWith("500 ms"));
+        assertTrue(slowest[1].startsWith("200 ms"));
+        assertTrue(slowest[4].startsWith("20 ms"));
+
+        metrics.addBufferedGroups(3);
+        metrics.addBufferedGroups(-1);
+        assertEquals(2, metrics.getBufferedGroups());
+        assertTrue(metrics.getSummary().contains("documents written: 80"));
+    }
+
+    private void assertWithinBucket(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual <= expected && actual >= expected * 7 / 8);
+    }
+}